@@ -0,0 +1,240 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Analyzer implements ANALYZE: it scans tables once and records their
+ * statistics in stats.txt next to schema.txt, where fillCatalogHash loads them
+ * for the planner. Per table it records the number of rows, pages and bytes of
+ * the data, per column the min, max, distinct count and an equi-depth
+ * histogram.
+ * 
+ * Usage: java Analyzer inputdir [table ...]
+ * 
+ * If no tables are given every table in schema.txt is analyzed. The scan keeps
+ * only a fixed amount of state per column, so tables much larger than the heap
+ * can be analyzed: distinct values are counted exactly until there are more
+ * than EXACT_LIMIT of them and estimated with a HyperLogLog sketch after that,
+ * and the histogram is built from a reservoir sample of SAMPLE_SIZE rows. The
+ * number of buckets is set by "histogram_buckets" in config.txt.
+ * 
+ * The same scan builds Bloom filters for the columns listed, separated by
+ * commas, in "bloom_columns table A,B", with the false positive probability
+ * set by "bloom_fpp" (0.01 by default). As the number of distinct values is
+ * only known at the end of the scan, each filter starts with room for as many
+ * values as the data file can hold rows and is folded down afterwards.
+ */
+public class Analyzer {
+
+  public static final int SAMPLE_SIZE = 10000;
+  public static final int EXACT_LIMIT = 4096;
+  public static final int DEFAULT_BUCKETS = 16;
+  static final int REGISTER_BITS = 12;
+
+  /**
+   * @param args The input directory followed by the tables to analyze
+   */
+  public static void main(String[] args) {
+    DatabaseCatalog catalog = DatabaseCatalog.getInstance();
+    catalog.fillCatalogHash(args[0]);
+
+    ArrayList<String> tables = new ArrayList<String>();
+    for (int i = 1; i < args.length; i++) {
+      tables.add(args[i]);
+    }
+    if (tables.isEmpty()) {
+      tables.addAll(catalog.getTableNames());
+    }
+    for (String table : tables) {
+      try {
+        TableStats stats = analyze(table);
+        catalog.saveStats(table, stats);
+        System.out.println("Analyzed " + table + " (" + stats.getRowCount() + " tuples)");
+      } catch (IOException e) {
+        System.out.println(e);
+      }
+    }
+  }
+
+  /**
+   * Collects the statistics of a table in a single scan of its data.
+   * 
+   * @param tbName The table to be analyzed
+   * @return The statistics of the table
+   */
+  public static TableStats analyze(String tbName) throws IOException {
+    DatabaseCatalog catalog = DatabaseCatalog.getInstance();
+    ArrayList<String> schema = catalog.getSchema(tbName);
+    int arity = schema.size();
+    int buckets = catalog.getIntSetting("histogram_buckets", DEFAULT_BUCKETS);
+
+    int[] min = new int[arity];
+    int[] max = new int[arity];
+    Arrays.fill(min, Integer.MAX_VALUE);
+    Arrays.fill(max, Integer.MIN_VALUE);
+    ArrayList<HashSet<Integer>> exact = new ArrayList<HashSet<Integer>>();
+    byte[][] registers = new byte[arity][];
+    for (int i = 0; i < arity; i++) {
+      exact.add(new HashSet<Integer>());
+    }
+    int[][] sample = new int[arity][SAMPLE_SIZE];
+    Random random = new Random(tbName.hashCode());
+
+    long bytes = dataSize(new File(catalog.getTbPath(tbName)));
+    String fppSetting = catalog.getSetting("bloom_fpp", tbName);
+    double fpp = fppSetting == null ? BloomFilter.DEFAULT_FPP : Double.parseDouble(fppSetting);
+    // The filters of columns that are no longer listed are removed, so they
+    // cannot go stale
+    BloomFilter[] blooms = new BloomFilter[arity];
+    for (int i = 0; i < arity; i++) {
+      if (catalog.isBloomColumn(tbName, schema.get(i))) {
+        blooms[i] = new BloomFilter(BloomFilter.optimalBits(maxRows(tbName, bytes, arity), fpp),
+            BloomFilter.optimalHashes(fpp));
+      } else {
+        catalog.getBloomFile(tbName, schema.get(i)).delete();
+      }
+    }
+
+    long rows = 0;
+    TupleReader reader = catalog.getTupleReader(tbName);
+    Tuple t = reader.readNextTuple();
+    while (t != null) {
+      long slot = rows < SAMPLE_SIZE ? rows : (long) (random.nextDouble() * (rows + 1));
+      for (int i = 0; i < arity; i++) {
+        int v = t.getColumn(i);
+        min[i] = Math.min(min[i], v);
+        max[i] = Math.max(max[i], v);
+        if (registers[i] == null) {
+          exact.get(i).add(v);
+          if (exact.get(i).size() > EXACT_LIMIT) {
+            registers[i] = new byte[1 << REGISTER_BITS];
+            for (int e : exact.get(i)) {
+              addToSketch(registers[i], e);
+            }
+            exact.set(i, null);
+          }
+        } else {
+          addToSketch(registers[i], v);
+        }
+        if (slot < SAMPLE_SIZE) {
+          sample[i][(int) slot] = v;
+        }
+        if (blooms[i] != null) {
+          blooms[i].add(v);
+        }
+      }
+      rows++;
+      t = reader.readNextTuple();
+    }
+    reader.close();
+
+    long pages = (bytes + BinaryTupleWriter.PAGE_SIZE - 1) / BinaryTupleWriter.PAGE_SIZE;
+    TableStats stats = new TableStats(tbName, rows, pages, bytes);
+    if (rows == 0) {
+      return stats;
+    }
+    int sampled = (int) Math.min(rows, SAMPLE_SIZE);
+    for (int i = 0; i < arity; i++) {
+      long ndv = registers[i] == null ? exact.get(i).size() : Math.min(rows, estimate(registers[i]));
+      int[] values = Arrays.copyOf(sample[i], sampled);
+      Arrays.sort(values);
+      int[] bounds = new int[buckets + 1];
+      for (int b = 1; b < buckets; b++) {
+        bounds[b] = values[(int) ((long) b * (sampled - 1) / buckets)];
+      }
+      bounds[0] = min[i];
+      bounds[buckets] = max[i];
+      stats.putColumn(schema.get(i), new ColumnStats(min[i], max[i], ndv, bounds));
+      if (blooms[i] != null) {
+        blooms[i].fold(BloomFilter.optimalBits(ndv, fpp));
+        blooms[i].write(catalog.getBloomFile(tbName, schema.get(i)));
+      }
+    }
+    return stats;
+  }
+
+  /**
+   * @param tbName The table
+   * @param bytes  The size of the data of the table
+   * @param arity  The number of columns of the table
+   * @return An upper bound on the number of rows of the table, known before it
+   *         is scanned
+   */
+  static long maxRows(String tbName, long bytes, int arity) {
+    DatabaseCatalog catalog = DatabaseCatalog.getInstance();
+    if (catalog.isColumnar(tbName)) {
+      // Encoded pages can hold many rows per byte, but the zone maps count them
+      ZoneMap zones = null;
+      try {
+        zones = ZoneMap.read(ZoneMap.getZoneFile(catalog.getTbPath(tbName) + File.separator
+            + catalog.getSchema(tbName).get(0)));
+      } catch (IOException e) {
+        System.out.println(e);
+      }
+      return zones == null ? bytes * 8 : zones.getRowCount();
+    }
+    // A text row takes at least a digit and a separator per column
+    return bytes / (2 * arity) + 1;
+  }
+
+  /**
+   * @param file A data file, or the directory of a columnar table
+   * @return The number of bytes the table occupies on disk
+   */
+  static long dataSize(File file) {
+    if (!file.isDirectory()) {
+      return file.length();
+    }
+    long bytes = 0;
+    for (File f : file.listFiles()) {
+      if (!f.getName().endsWith(".zone")) {
+        bytes += f.length();
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Adds a value to a HyperLogLog sketch: the top bits of the hash of the value
+   * choose a register, which keeps the longest run of leading zeros seen in the
+   * remaining bits.
+   * 
+   * @param registers The registers of the sketch
+   * @param v         The value to be added
+   */
+  static void addToSketch(byte[] registers, int v) {
+    long h = v * 0x9E3779B97F4A7C15L;
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    h *= 0xC4CEB9FE1A85EC53L;
+    h ^= h >>> 33;
+    int index = (int) (h >>> (64 - REGISTER_BITS));
+    byte rank = (byte) (Long.numberOfLeadingZeros((h << REGISTER_BITS) | (1L << (REGISTER_BITS - 1))) + 1);
+    if (rank > registers[index]) {
+      registers[index] = rank;
+    }
+  }
+
+  /**
+   * @param registers The registers of a HyperLogLog sketch
+   * @return The estimated number of distinct values added to the sketch, using
+   *         linear counting while many registers are still empty
+   */
+  static long estimate(byte[] registers) {
+    int m = registers.length;
+    double sum = 0;
+    int zeros = 0;
+    for (byte r : registers) {
+      sum += Math.pow(2, -r);
+      if (r == 0) {
+        zeros++;
+      }
+    }
+    double e = 0.7213 / (1 + 1.079 / m) * m * m / sum;
+    if (e <= 2.5 * m && zeros > 0) {
+      e = m * Math.log((double) m / zeros);
+    }
+    return Math.round(e);
+  }
+}
@@ -0,0 +1,369 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * BPlusTree is a B+ tree over an integer column of a binary table, stored in
+ * pages of BinaryTupleWriter.PAGE_SIZE bytes. Its data entries map a key to the
+ * record ids (rids) of the tuples holding the key, where a rid is the number of
+ * the page of the binary file and the position of the tuple on that page.
+ * 
+ * The tree is bulk-loaded bottom-up from the sorted data entries and never
+ * updated afterwards. Page 0 is a header holding the address of the root, the
+ * number of leaves and the order d. The leaves follow in key order from page 1,
+ * each holding a 0 flag, the number of data entries, and per entry the key, the
+ * number of rids and the rids. The index nodes follow, level by level, each
+ * holding a 1 flag, the number of keys, the keys and the addresses of the
+ * children. Nodes hold at most 2d entries or keys and, except for the root, at
+ * least d. A key with more rids than fit on a page is split over several
+ * entries, which then share the key.
+ * 
+ * To look up a range, the tree is descended to the first leaf that may hold the
+ * smallest key, then the leaves are read in order until a larger key than the
+ * range allows is found.
+ */
+public class BPlusTree implements Index {
+
+  static final int PAGE_INTS = BinaryTupleWriter.PAGE_SIZE / 4;
+
+  File file;
+  String path;
+  FileChannel channel;
+  BufferPool pool;
+  boolean pooled;
+  ByteBuffer page = ByteBuffer.allocate(BinaryTupleWriter.PAGE_SIZE);
+  int[] node = new int[PAGE_INTS];
+  int root;
+  int leaves;
+  int order;
+
+  // Position in the leaves: the leaf, the entry, and the rid of the entry
+  int leaf;
+  int entry;
+  int entries;
+  int offset;
+  int rid;
+  int rids;
+  long high;
+
+  /**
+   * Constructor for the BPlusTree class that opens an existing tree.
+   * 
+   * @param f The file holding the tree
+   * @return a BPlusTree instance
+   */
+  public BPlusTree(File f) throws IOException {
+    file = f;
+    path = f.getPath();
+    pool = BufferPool.getInstance();
+    pooled = pool.isEnabled();
+    if (!pooled) {
+      channel = new FileInputStream(file).getChannel();
+    }
+    readNode(0);
+    root = node[0];
+    leaves = node[1];
+    order = node[2];
+  }
+
+  /**
+   * Reads a page of the tree into the node buffer.
+   * 
+   * @param n The address of the page
+   */
+  private void readNode(int n) throws IOException {
+    ByteBuffer p;
+    if (pooled) {
+      p = pool.pin(path, n);
+      if (p == null) {
+        throw new IOException("Page " + n + " is missing from index " + path);
+      }
+    } else {
+      p = page;
+      p.clear();
+      long start = (long) n * BinaryTupleWriter.PAGE_SIZE;
+      while (p.hasRemaining()) {
+        if (channel.read(p, start + p.position()) == -1) {
+          break;
+        }
+      }
+      if (p.position() < BinaryTupleWriter.PAGE_SIZE) {
+        throw new IOException("Page " + n + " is missing from index " + path);
+      }
+      p.flip();
+    }
+    p.asIntBuffer().get(node);
+    if (pooled) {
+      pool.unpin(path, n);
+    }
+  }
+
+  /**
+   * Positions the tree on the first rid whose key is at least low, so that
+   * nextRid returns the rids with keys in [low, high] in key order.
+   * 
+   * @param low  The smallest key of interest
+   * @param high The largest key of interest
+   */
+  public void seek(long low, long high) throws IOException {
+    this.high = high;
+    entries = 0;
+    rids = 0;
+    if (leaves == 0) {
+      leaf = 1;
+      return;
+    }
+    int n = root;
+    readNode(n);
+    // Go to the leftmost child that may hold low, as equal keys can continue
+    // to the left of the key that separates two children
+    while (node[0] == 1) {
+      int keys = node[1];
+      int child = keys;
+      for (int i = 0; i < keys; i++) {
+        if (low <= node[2 + i]) {
+          child = i;
+          break;
+        }
+      }
+      n = node[2 + keys + child];
+      readNode(n);
+    }
+    leaf = n;
+    entry = 0;
+    entries = node[1];
+    offset = 2;
+    while (true) {
+      while (entry < entries) {
+        if (node[offset] >= low) {
+          rid = 0;
+          rids = node[offset + 1];
+          return;
+        }
+        offset += 2 + 2 * node[offset + 1];
+        entry++;
+      }
+      if (!nextLeaf()) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Moves to the first entry of the next leaf.
+   * 
+   * @return false if there are no leaves left
+   */
+  private boolean nextLeaf() throws IOException {
+    leaf++;
+    entries = 0;
+    if (leaf > leaves) {
+      return false;
+    }
+    readNode(leaf);
+    entry = 0;
+    entries = node[1];
+    offset = 2;
+    return true;
+  }
+
+  /**
+   * @return The next rid in the range given to seek as {key, page, tuple}, or
+   *         null if there are none left
+   */
+  public int[] nextRid() throws IOException {
+    while (rid >= rids) {
+      if (entry < entries) {
+        offset += 2 + 2 * rids;
+        entry++;
+      }
+      while (entry >= entries) {
+        if (!nextLeaf()) {
+          return null;
+        }
+      }
+      rid = 0;
+      rids = node[offset + 1];
+    }
+    if (node[offset] > high) {
+      rids = 0;
+      entries = 0;
+      leaf = leaves;
+      return null;
+    }
+    int[] result = { node[offset], node[offset + 2 + 2 * rid], node[offset + 3 + 2 * rid] };
+    rid++;
+    return result;
+  }
+
+  /** Closes the underlying file. */
+  public void close() throws IOException {
+    if (channel != null) {
+      channel.close();
+    }
+  }
+
+  /**
+   * Bulk-loads a tree from data entries sorted on their keys, in one pass over
+   * them. The leaves are filled left to right with up to 2d entries each, or
+   * fewer when the rids do not fit on the page; if that leaves the last leaf
+   * with fewer than d entries, the last two leaves share their entries evenly.
+   * A leaf is written as soon as the one after it is full, so only the last two
+   * leaves and the first key and address of every node of a level are held in
+   * memory. The index levels are built the same way, until a level has a single
+   * node, which becomes the root, and the header is written last.
+   * 
+   * @param f       The file to be written
+   * @param entries An operator returning the {key, page, tuple} triples of the
+   *                indexed column, sorted on the key and then on the rid
+   * @param d       The order of the tree
+   * @return The number of triples in the tree
+   */
+  public static int bulkLoad(File f, Operator entries, int d) throws IOException {
+    // The largest order whose index nodes fit on a page
+    d = Math.max(1, Math.min(d, (PAGE_INTS - 3) / 4));
+    FileChannel out = new FileOutputStream(f).getChannel();
+    ByteBuffer buffer = ByteBuffer.allocate(BinaryTupleWriter.PAGE_SIZE);
+    int[] header = new int[PAGE_INTS];
+    writePage(out, buffer, header);
+
+    // Group the rids of every key into data entries that fit on a leaf, and cut
+    // the data entries into leaves
+    ArrayList<Integer> level = new ArrayList<Integer>();
+    ArrayList<Integer> levelKeys = new ArrayList<Integer>();
+    ArrayList<int[]> previous = null;
+    ArrayList<int[]> current = new ArrayList<int[]>();
+    int size = 2;
+    int count = 0;
+    int maxRids = (PAGE_INTS - 4) / 2;
+    int[] rids = new int[2 * maxRids];
+    Tuple t = entries.getNextTuple();
+    while (t != null) {
+      int key = t.getColumn(0);
+      int n = 0;
+      while (t != null && t.getColumn(0) == key && n < maxRids) {
+        rids[2 * n] = t.getColumn(1);
+        rids[2 * n + 1] = t.getColumn(2);
+        n++;
+        t = entries.getNextTuple();
+      }
+      count += n;
+      int[] e = new int[2 + 2 * n];
+      e[0] = key;
+      e[1] = n;
+      System.arraycopy(rids, 0, e, 2, 2 * n);
+      if (current.size() == 2 * d || size + e.length > PAGE_INTS) {
+        if (previous != null) {
+          writeLeaf(out, buffer, previous, level, levelKeys);
+        }
+        previous = current;
+        current = new ArrayList<int[]>();
+        size = 2;
+      }
+      current.add(e);
+      size += e.length;
+    }
+    if (previous != null && current.size() < d) {
+      ArrayList<int[]> last = new ArrayList<int[]>(previous);
+      last.addAll(current);
+      int mid = last.size() / 2;
+      size = 2;
+      for (int k = mid; k < last.size(); k++) {
+        size += last.get(k).length;
+      }
+      if (mid < previous.size() && size <= PAGE_INTS) {
+        previous = new ArrayList<int[]>(last.subList(0, mid));
+        current = new ArrayList<int[]>(last.subList(mid, last.size()));
+      }
+    }
+    if (previous != null) {
+      writeLeaf(out, buffer, previous, level, levelKeys);
+    }
+    if (!current.isEmpty()) {
+      writeLeaf(out, buffer, current, level, levelKeys);
+    }
+    int leafCount = level.size();
+
+    // Build the index levels until a single node is left
+    int pages = 1 + leafCount;
+    while (level.size() > 1) {
+      ArrayList<Integer> groups = new ArrayList<Integer>();
+      for (int g = 0; g < level.size(); g += 2 * d + 1) {
+        groups.add(g);
+      }
+      groups.add(level.size());
+      int m = groups.size() - 1;
+      if (m >= 2 && groups.get(m) - groups.get(m - 1) < d + 1) {
+        groups.set(m - 1, (groups.get(m - 2) + groups.get(m)) / 2);
+      }
+      ArrayList<Integer> next = new ArrayList<Integer>();
+      ArrayList<Integer> nextKeys = new ArrayList<Integer>();
+      for (int g = 0; g < m; g++) {
+        int from = groups.get(g);
+        int to = groups.get(g + 1);
+        int keys = to - from - 1;
+        int[] index = new int[PAGE_INTS];
+        index[0] = 1;
+        index[1] = keys;
+        for (int k = 0; k < keys; k++) {
+          index[2 + k] = levelKeys.get(from + 1 + k);
+        }
+        for (int k = 0; k <= keys; k++) {
+          index[2 + keys + k] = level.get(from + k);
+        }
+        next.add(pages++);
+        nextKeys.add(levelKeys.get(from));
+        writePage(out, buffer, index);
+      }
+      level = next;
+      levelKeys = nextKeys;
+    }
+
+    header[0] = level.isEmpty() ? 0 : level.get(0);
+    header[1] = leafCount;
+    header[2] = d;
+    out.position(0);
+    writePage(out, buffer, header);
+    out.close();
+    return count;
+  }
+
+  /**
+   * Writes a leaf to the end of a file and adds it to the level of leaves.
+   * 
+   * @param out       The file being written
+   * @param buffer    A buffer of one page
+   * @param entries   The data entries of the leaf
+   * @param level     The addresses of the leaves written so far
+   * @param levelKeys The first keys of the leaves written so far
+   */
+  private static void writeLeaf(FileChannel out, ByteBuffer buffer, ArrayList<int[]> entries,
+      ArrayList<Integer> level, ArrayList<Integer> levelKeys) throws IOException {
+    int[] leaf = new int[PAGE_INTS];
+    leaf[0] = 0;
+    leaf[1] = entries.size();
+    int pos = 2;
+    for (int[] e : entries) {
+      System.arraycopy(e, 0, leaf, pos, e.length);
+      pos += e.length;
+    }
+    level.add(1 + level.size());
+    levelKeys.add(entries.get(0)[0]);
+    writePage(out, buffer, leaf);
+  }
+
+  /**
+   * Writes one page of ints at the position of a file.
+   */
+  private static void writePage(FileChannel out, ByteBuffer buffer, int[] p) throws IOException {
+    buffer.clear();
+    buffer.asIntBuffer().put(p);
+    while (buffer.hasRemaining()) {
+      out.write(buffer);
+    }
+  }
+}
@@ -0,0 +1,217 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * BinaryTupleReader reads a table stored in the binary page format written by
+ * BinaryTupleWriter. It reads one page at a time, copies its ints into an int
+ * buffer in one bulk operation and cuts the tuples out of that buffer, so no
+ * text parsing is involved. When the BufferPool is enabled a page is pinned in
+ * the shared pool only while its ints are copied, instead of being read into
+ * a private buffer.
+ */
+public class BinaryTupleReader implements TupleReader {
+
+  File file;
+  String path;
+  FileChannel channel;
+  ByteBuffer page = ByteBuffer.allocate(BinaryTupleWriter.PAGE_SIZE);
+  int[] values = new int[(BinaryTupleWriter.PAGE_SIZE - BinaryTupleWriter.HEADER_SIZE) / 4];
+  BufferPool pool;
+  boolean pooled;
+  // Number of the page in the value buffer, -1 before the first page
+  long pageNo = -1;
+  int arity;
+  int count;
+  int next;
+  // Rows that may be of interest, null for every row
+  long[][] candidates;
+  // Number of tuples on every page but the last
+  int capacity;
+  JoinFilters joinFilters = new JoinFilters();
+
+  /**
+   * Constructor for the BinaryTupleReader class.
+   * 
+   * @param f The binary file to be read
+   * @return a BinaryTupleReader instance
+   */
+  public BinaryTupleReader(File f) throws IOException {
+    file = f;
+    path = f.getPath();
+    pool = BufferPool.getInstance();
+    pooled = pool.isEnabled();
+    if (!pooled) {
+      channel = new FileInputStream(file).getChannel();
+    }
+  }
+
+  /**
+   * Reads the next page of the file into the page buffer.
+   * 
+   * @return false if there are no pages left
+   */
+  private boolean readPage() throws IOException {
+    long n = pageNo + 1;
+    if (candidates != null) {
+      n = nextCandidatePage(n);
+      if (n == -1) {
+        return false;
+      }
+    }
+    return loadPage(n);
+  }
+
+  /**
+   * @param n The number of a page
+   * @return The first page from n on that holds a candidate row, or -1 if there
+   *         is none
+   */
+  private long nextCandidatePage(long n) {
+    for (long[] range : candidates) {
+      if (range[1] > n * capacity) {
+        return Math.max(n, range[0] / capacity);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Skips the pages without candidate rows from now on. Every page but the last
+   * is full, so the rows on a page follow from the arity in the first header.
+   * 
+   * @param ranges The rows of interest, or null for every row
+   */
+  public void setCandidateRows(long[][] ranges) throws IOException {
+    candidates = null;
+    if (ranges != null && loadPage(0)) {
+      capacity = getCapacity(arity);
+      candidates = ranges;
+    }
+    reset();
+  }
+
+  /**
+   * Loads a page of the file, either by pinning it in the buffer pool or by
+   * reading it into the private page buffer, and copies its values into the
+   * value buffer.
+   * 
+   * @param n The number of the page
+   * @return false if the file has no such page
+   */
+  boolean loadPage(long n) throws IOException {
+    ByteBuffer p;
+    if (pooled) {
+      p = pool.pin(path, n);
+      if (p == null) {
+        return false;
+      }
+    } else {
+      p = page;
+      p.clear();
+      long offset = n * BinaryTupleWriter.PAGE_SIZE;
+      while (p.hasRemaining()) {
+        if (channel.read(p, offset + p.position()) == -1) {
+          break;
+        }
+      }
+      if (p.position() < BinaryTupleWriter.HEADER_SIZE) {
+        return false;
+      }
+      p.flip();
+    }
+    arity = p.getInt();
+    count = p.getInt();
+    p.asIntBuffer().get(values, 0, arity * count);
+    if (pooled) {
+      pool.unpin(path, n);
+    }
+    pageNo = n;
+    next = 0;
+    return true;
+  }
+
+  /**
+   * Decodes the next tuple of the current page, reading a new page when the
+   * current one is used up.
+   * 
+   * @return The next tuple in the file, or null at the end of the file
+   */
+  public Tuple readNextTuple() throws IOException {
+    while (true) {
+      while (next >= count) {
+        if (!readPage()) {
+          return null;
+        }
+      }
+      if (joinFilters.accepts(values, next * arity)) {
+        break;
+      }
+      next++;
+    }
+    return decodeTuple();
+  }
+
+  /**
+   * @return The tuple at the current position of the page buffer
+   */
+  private Tuple decodeTuple() {
+    int[] row = new int[arity];
+    System.arraycopy(values, next * arity, row, 0, arity);
+    next++;
+    return new Tuple(row);
+  }
+
+  /**
+   * Reads the tuple with the given rid. The following calls to readNextTuple
+   * continue with the tuples after it.
+   * 
+   * @param pageId  The number of the page holding the tuple
+   * @param tupleId The position of the tuple on the page
+   * @return The tuple, or null if the file has no such tuple
+   */
+  public Tuple readTuple(long pageId, int tupleId) throws IOException {
+    if (pageNo != pageId && !loadPage(pageId)) {
+      return null;
+    }
+    next = tupleId;
+    if (next >= count) {
+      return null;
+    }
+    return decodeTuple();
+  }
+
+  /**
+   * Skips the rows the filter rules out from now on.
+   * 
+   * @param column The position of the filtered column
+   * @param f      The filter
+   */
+  public void addJoinFilter(int column, JoinFilter f) {
+    joinFilters.add(column, f);
+  }
+
+  /**
+   * @param arity The number of columns of the table
+   * @return The number of tuples on every page but the last
+   */
+  public static int getCapacity(int arity) {
+    return (BinaryTupleWriter.PAGE_SIZE - BinaryTupleWriter.HEADER_SIZE) / (4 * Math.max(arity, 1));
+  }
+
+  /** Resets to the first page of the file. */
+  public void reset() throws IOException {
+    pageNo = -1;
+    count = 0;
+    next = 0;
+  }
+
+  /** Closes the underlying file. */
+  public void close() throws IOException {
+    if (channel != null) {
+      channel.close();
+    }
+  }
+}
@@ -0,0 +1,127 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * BinaryTupleWriter writes tuples in the binary page format. The file is a
+ * sequence of fixed-size pages. Every page starts with a header of two ints,
+ * the arity of the tuples and the number of tuples on the page, followed by
+ * the packed int values of the tuples. The unused end of a page is zero filled.
+ * Table files can also get a ZoneMap sidecar with the min and max of every
+ * column on every page.
+ */
+public class BinaryTupleWriter implements TupleWriter {
+
+  public static final int PAGE_SIZE = 4096;
+  public static final int HEADER_SIZE = 8;
+
+  FileChannel channel;
+  ByteBuffer page = ByteBuffer.allocate(PAGE_SIZE);
+  int arity = -1;
+  int capacity;
+  int count;
+  File file;
+  ZoneMap zones;
+  int[] min;
+  int[] max;
+
+  /**
+   * Constructor for the BinaryTupleWriter class.
+   * 
+   * @param f The file to be written, it is truncated if it already exists
+   * @return a BinaryTupleWriter instance
+   */
+  public BinaryTupleWriter(File f) throws IOException {
+    this(f, false);
+  }
+
+  /**
+   * Constructor for the BinaryTupleWriter class.
+   * 
+   * @param f       The file to be written, it is truncated if it already exists
+   * @param zoneMap true to also write the zone map of the file when it is closed
+   * @return a BinaryTupleWriter instance
+   */
+  public BinaryTupleWriter(File f, boolean zoneMap) throws IOException {
+    file = f;
+    channel = new FileOutputStream(f).getChannel();
+    if (zoneMap) {
+      zones = new ZoneMap();
+    }
+  }
+
+  /**
+   * Adds the tuple to the current page and writes the page out once it is
+   * full. The arity of the file is fixed by the first tuple written, which
+   * must fit on a page.
+   * 
+   * @param t The tuple to be written
+   */
+  public void writeTuple(Tuple t) throws IOException {
+    if (arity == -1) {
+      capacity = (PAGE_SIZE - HEADER_SIZE) / (4 * Math.max(t.size(), 1));
+      if (capacity == 0) {
+        throw new IOException("Tuples of " + t.size() + " columns do not fit on a page of " + PAGE_SIZE + " bytes");
+      }
+      arity = t.size();
+      page.position(HEADER_SIZE);
+      min = new int[arity];
+      max = new int[arity];
+    }
+    if (t.size() != arity) {
+      throw new IOException("Tuple arity " + t.size() + " does not match file arity " + arity);
+    }
+    for (int i = 0; i < arity; i++) {
+      int v = t.getColumn(i);
+      page.putInt(v);
+      if (count == 0 || v < min[i]) {
+        min[i] = v;
+      }
+      if (count == 0 || v > max[i]) {
+        max[i] = v;
+      }
+    }
+    count++;
+    if (count == capacity) {
+      flushPage();
+    }
+  }
+
+  /**
+   * Writes the header and the zero filled remainder of the current page, then
+   * starts a new page.
+   */
+  private void flushPage() throws IOException {
+    while (page.hasRemaining()) {
+      page.put((byte) 0);
+    }
+    page.putInt(0, arity);
+    page.putInt(4, count);
+    if (zones != null) {
+      zones.addPage(count, min, max);
+    }
+    page.flip();
+    while (page.hasRemaining()) {
+      channel.write(page);
+    }
+    page.clear();
+    page.position(HEADER_SIZE);
+    count = 0;
+  }
+
+  /**
+   * Writes out the last partially filled page and closes the file, writing the
+   * zone map next to it if there is one.
+   */
+  public void close() throws IOException {
+    if (count > 0) {
+      flushPage();
+    }
+    channel.close();
+    if (zones != null) {
+      zones.write(ZoneMap.getZoneFile(file.getPath()));
+    }
+  }
+}
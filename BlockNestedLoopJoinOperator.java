@@ -0,0 +1,106 @@
+import java.util.*;
+import net.sf.jsqlparser.expression.*;
+
+/**
+ * BlockNestedLoopJoinOperator joins its children like JoinOperator, but reads
+ * the left child a block of pages at a time and scans the right child once per
+ * block instead of once per left tuple. Every right tuple is compared with the
+ * whole block in a tight loop: the columns equated by the join condition are
+ * compared as ints first, and only pairs that agree on them are combined and
+ * checked against the full condition.
+ */
+public class BlockNestedLoopJoinOperator extends JoinOperator {
+
+  Tuple[] block;
+  int size;
+  int pos;
+  Tuple rightTuple;
+  // Positions of the columns equated by the join condition, in the left and
+  // in the right tuples
+  int[] leftKeys;
+  int[] rightKeys;
+
+  /**
+   * Constructor for the BlockNestedLoopJoinOperator class.
+   * 
+   * @param l     The left child operator
+   * @param r     The right child operator
+   * @param e     The join condition
+   * @param pages The number of pages of left tuples held in a block
+   * @return a BlockNestedLoopJoinOperator instance
+   */
+  public BlockNestedLoopJoinOperator(Operator l, Operator r, Expression e, int pages) {
+    super(l, r, e);
+    block = new Tuple[Math.max(pages, 1) * BinaryTupleReader.getCapacity(leftSchema.size())];
+
+    int[][] keys = getJoinKeys();
+    leftKeys = keys[0];
+    rightKeys = keys[1];
+  }
+
+  /**
+   * Reads the next block of left tuples and restarts the right child.
+   * 
+   * @return false if the left child has no tuples left
+   */
+  private boolean fillBlock() {
+    size = 0;
+    while (leftTuple != null && size < block.length) {
+      block[size++] = leftTuple;
+      leftTuple = nextLeftTuple();
+    }
+    right.reset();
+    return size > 0;
+  }
+
+  /**
+   * @return The next combined tuple that satisfies the join condition. The
+   *         current right tuple is paired with every tuple of the block before
+   *         the next right tuple is read, and the next block is read when the
+   *         right child is used up.
+   */
+  public Tuple getNextTuple() {
+    while (true) {
+      while (pos < size) {
+        Tuple l = block[pos++];
+        int k = 0;
+        while (k < leftKeys.length && l.getColumn(leftKeys[k]) == rightTuple.getColumn(rightKeys[k])) {
+          k++;
+        }
+        if (k < leftKeys.length) {
+          continue;
+        }
+        Tuple newOne = l.combine(rightTuple);
+        if (express == null) {
+          return newOne;
+        }
+        vis.setTuple(newOne);
+        express.accept(vis);
+        if (vis.getOutcome()) {
+          return newOne;
+        }
+      }
+      rightTuple = size == 0 ? null : right.getNextTuple();
+      if (rightTuple == null) {
+        if (!fillBlock()) {
+          return null;
+        }
+        rightTuple = right.getNextTuple();
+        if (rightTuple == null) {
+          size = 0;
+          return null;
+        }
+      }
+      pos = 0;
+    }
+  }
+
+  /** Reset to the first block of the left child */
+  public void reset() {
+    left.reset();
+    leftTuple = nextLeftTuple();
+    size = 0;
+    pos = 0;
+    right.reset();
+  }
+}
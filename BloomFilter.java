@@ -0,0 +1,193 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * BloomFilter is a Bloom filter over the values of an integer column: a value
+ * that was added is always reported as possibly present, and a value that was
+ * not is reported as absent except with a small false positive probability.
+ * Filters are built by Analyzer for the columns listed in "bloom_columns" and
+ * kept next to the data files as db/data/table.column.bloom.
+ * 
+ * The number of bits is a power of two, and the bit for the i-th hash of a
+ * value is h1 + i * h2 modulo that number. This lets Analyzer start with a
+ * filter large enough for any table and fold it in half, by or-ing the two
+ * halves together, until it has the size the number of distinct values calls
+ * for, so the filter is built in the same single pass as the statistics.
+ * 
+ * The counts of probes and of probes answered "absent" are kept for the whole
+ * program so DBMSMain can report them.
+ */
+public class BloomFilter {
+
+  public static final double DEFAULT_FPP = 0.01;
+  static final long MAX_BITS = 1L << 29;
+
+  static long probes;
+  static long pruned;
+
+  long[] words;
+  long bits;
+  int hashes;
+
+  /**
+   * Constructor for the BloomFilter class.
+   * 
+   * @param m The number of bits, rounded up to a power of two
+   * @param k The number of hash functions
+   * @return an empty BloomFilter
+   */
+  public BloomFilter(long m, int k) {
+    bits = 64;
+    while (bits < m && bits < MAX_BITS) {
+      bits <<= 1;
+    }
+    words = new long[(int) (bits / 64)];
+    hashes = k;
+  }
+
+  /**
+   * @param n   The number of distinct values
+   * @param fpp The wanted false positive probability
+   * @return The number of bits a filter needs for that probability
+   */
+  public static long optimalBits(long n, double fpp) {
+    return (long) Math.ceil(-Math.max(n, 1) * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+  }
+
+  /**
+   * @param fpp The wanted false positive probability
+   * @return The number of hash functions giving that probability with
+   *         optimalBits bits
+   */
+  public static int optimalHashes(double fpp) {
+    return Math.max(1, (int) Math.round(-Math.log(fpp) / Math.log(2)));
+  }
+
+  /**
+   * @param v A value
+   * @return Two independent 32 bit hashes of the value in one long
+   */
+  static long hash(int v) {
+    long h = v * 0x9E3779B97F4A7C15L;
+    h ^= h >>> 32;
+    h *= 0xD6E8FEB86659FD93L;
+    h ^= h >>> 32;
+    return h;
+  }
+
+  /**
+   * @param v The value to be added
+   */
+  public void add(int v) {
+    long h = hash(v);
+    long h1 = h >>> 32;
+    long h2 = h & 0xFFFFFFFFL;
+    for (int i = 0; i < hashes; i++) {
+      long bit = (h1 + i * h2) & (bits - 1);
+      words[(int) (bit >>> 6)] |= 1L << bit;
+    }
+  }
+
+  /**
+   * @param v The value to be looked up
+   * @return false if the value was certainly never added
+   */
+  public boolean mightContain(long v) {
+    probes++;
+    if (v >= Integer.MIN_VALUE && v <= Integer.MAX_VALUE && contains((int) v)) {
+      return true;
+    }
+    pruned++;
+    return false;
+  }
+
+  /**
+   * Looks up a value without counting the probe.
+   * 
+   * @param v The value to be looked up
+   * @return false if the value was certainly never added
+   */
+  boolean contains(int v) {
+    long h = hash(v);
+    long h1 = h >>> 32;
+    long h2 = h & 0xFFFFFFFFL;
+    for (int i = 0; i < hashes; i++) {
+      long bit = (h1 + i * h2) & (bits - 1);
+      if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Halves the filter until it has no more bits than asked for, keeping every
+   * value that was added.
+   * 
+   * @param m The largest number of bits the filter should keep
+   */
+  public void fold(long m) {
+    while (bits > 64 && bits / 2 >= m) {
+      int half = words.length / 2;
+      long[] folded = new long[half];
+      for (int i = 0; i < half; i++) {
+        folded[i] = words[i] | words[i + half];
+      }
+      words = folded;
+      bits /= 2;
+    }
+  }
+
+  /** @return The number of bits of the filter */
+  public long getBits() {
+    return bits;
+  }
+
+  /**
+   * @param file The file to be written, holding the number of hash functions,
+   *             the number of bits and the bits
+   */
+  public void write(File file) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    out.writeInt(hashes);
+    out.writeLong(bits);
+    for (long w : words) {
+      out.writeLong(w);
+    }
+    out.close();
+  }
+
+  /**
+   * @param file A file written by write
+   * @return The filter, or null if there is no such file
+   */
+  public static BloomFilter read(File file) throws IOException {
+    if (!file.exists()) {
+      return null;
+    }
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    int k = in.readInt();
+    BloomFilter filter = new BloomFilter(in.readLong(), k);
+    for (int i = 0; i < filter.words.length; i++) {
+      filter.words[i] = in.readLong();
+    }
+    in.close();
+    return filter;
+  }
+
+  /** @return The number of lookups made in any filter so far */
+  public static long getProbes() {
+    return probes;
+  }
+
+  /** @return The number of lookups that found a value to be absent */
+  public static long getPruned() {
+    return pruned;
+  }
+}
@@ -0,0 +1,239 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * BufferPool caches fixed-size pages of the binary and columnar data files in
+ * a fixed number of frames that are shared by every scan in the process, so two
+ * scans of the same table (for example both sides of a self join) read each
+ * page from disk only once while it stays cached. Like DatabaseCatalog it uses
+ * a singleton pattern.
+ * 
+ * A scan pins a page while it reads from it and unpins it afterwards. Only
+ * unpinned pages are evicted, chosen by either the clock algorithm or least
+ * recently used. The pool is disabled until it is configured with a positive
+ * number of pages, in which case readers go to disk directly.
+ */
+public class BufferPool {
+
+  private static BufferPool single_instance = new BufferPool();
+
+  int capacity;
+  boolean lru;
+  ByteBuffer[] frames;
+  String[] framePaths;
+  long[] framePages;
+  int[] pinCounts;
+  boolean[] referenced;
+  long[] lastUsed;
+  HashMap<String, Integer> pageTable = new HashMap<String, Integer>();
+  HashMap<String, FileChannel> files = new HashMap<String, FileChannel>();
+  int clockHand;
+  long time;
+
+  long hits;
+  long misses;
+  long evictions;
+
+  /**
+   * The pool starts disabled
+   */
+  private BufferPool() {
+  }
+
+  /**
+   * @return The singleton instance of the buffer pool
+   */
+  public static BufferPool getInstance() {
+    return single_instance;
+  }
+
+  /**
+   * Empties the pool and gives it a new size and eviction policy.
+   * 
+   * @param pages  The number of page frames, 0 disables the pool
+   * @param policy "clock" or "lru"
+   */
+  public synchronized void configure(int pages, String policy) {
+    clear();
+    capacity = pages;
+    lru = "lru".equalsIgnoreCase(policy);
+    frames = new ByteBuffer[pages];
+    framePaths = new String[pages];
+    framePages = new long[pages];
+    pinCounts = new int[pages];
+    referenced = new boolean[pages];
+    lastUsed = new long[pages];
+    clockHand = 0;
+    hits = misses = evictions = 0;
+  }
+
+  /**
+   * @return true if scans should read their pages through the pool
+   */
+  public boolean isEnabled() {
+    return capacity > 0;
+  }
+
+  /**
+   * Pins a page of a file, reading it from disk if it is not cached.
+   * 
+   * @param path   The path of the data file
+   * @param pageNo The number of the page in the file
+   * @return A buffer over the page positioned at its start, or null if the file
+   *         has no such page. The buffer must not be written to, and must not be
+   *         used after the page is unpinned.
+   */
+  public synchronized ByteBuffer pin(String path, long pageNo) throws IOException {
+    String key = path + "#" + pageNo;
+    Integer frame = pageTable.get(key);
+    if (frame != null) {
+      hits++;
+    } else {
+      FileChannel channel = getFile(path);
+      long offset = pageNo * BinaryTupleWriter.PAGE_SIZE;
+      if (offset + BinaryTupleWriter.HEADER_SIZE > channel.size()) {
+        return null;
+      }
+      misses++;
+      frame = findVictim();
+      if (frames[frame] == null) {
+        frames[frame] = ByteBuffer.allocateDirect(BinaryTupleWriter.PAGE_SIZE);
+      }
+      ByteBuffer buffer = frames[frame];
+      buffer.clear();
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, offset + buffer.position()) == -1) {
+          break;
+        }
+      }
+      while (buffer.hasRemaining()) {
+        buffer.put((byte) 0);
+      }
+      framePaths[frame] = path;
+      framePages[frame] = pageNo;
+      pageTable.put(key, frame);
+    }
+    pinCounts[frame]++;
+    referenced[frame] = true;
+    lastUsed[frame] = ++time;
+    ByteBuffer page = frames[frame].duplicate();
+    page.clear();
+    return page;
+  }
+
+  /**
+   * Releases one pin of a page, after which it may be evicted.
+   * 
+   * @param path   The path of the data file
+   * @param pageNo The number of the page in the file
+   */
+  public synchronized void unpin(String path, long pageNo) {
+    Integer frame = pageTable.get(path + "#" + pageNo);
+    if (frame != null && pinCounts[frame] > 0) {
+      pinCounts[frame]--;
+    }
+  }
+
+  /**
+   * Chooses a free frame, or evicts an unpinned page to free one.
+   * 
+   * @return The index of the frame to load a page into
+   */
+  private int findVictim() throws IOException {
+    int victim = -1;
+    for (int i = 0; i < capacity && victim == -1; i++) {
+      if (framePaths[i] == null) {
+        victim = i;
+      }
+    }
+    if (victim == -1 && lru) {
+      for (int i = 0; i < capacity; i++) {
+        if (pinCounts[i] == 0 && (victim == -1 || lastUsed[i] < lastUsed[victim])) {
+          victim = i;
+        }
+      }
+    } else if (victim == -1) {
+      // Sweep the clock hand, clearing reference bits, at most twice around
+      for (int step = 0; step < 2 * capacity && victim == -1; step++) {
+        int i = clockHand;
+        clockHand = (clockHand + 1) % capacity;
+        if (pinCounts[i] == 0) {
+          if (referenced[i]) {
+            referenced[i] = false;
+          } else {
+            victim = i;
+          }
+        }
+      }
+    }
+    if (victim == -1) {
+      throw new IOException("All " + capacity + " buffer pool pages are pinned");
+    }
+    if (framePaths[victim] != null) {
+      pageTable.remove(framePaths[victim] + "#" + framePages[victim]);
+      framePaths[victim] = null;
+      evictions++;
+    }
+    return victim;
+  }
+
+  /**
+   * @param path The path of a data file
+   * @return The open channel of the file, opened on first use
+   */
+  private FileChannel getFile(String path) throws IOException {
+    FileChannel channel = files.get(path);
+    if (channel == null) {
+      channel = new RandomAccessFile(new File(path), "r").getChannel();
+      files.put(path, channel);
+    }
+    return channel;
+  }
+
+  /**
+   * Drops every cached page and closes the files, for example after a data file
+   * has been rewritten.
+   */
+  public synchronized void clear() {
+    pageTable.clear();
+    if (framePaths != null) {
+      Arrays.fill(framePaths, null);
+      Arrays.fill(pinCounts, 0);
+    }
+    for (FileChannel channel : files.values()) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        System.out.println(e);
+      }
+    }
+    files.clear();
+  }
+
+  /** @return The number of pins answered from a cached page */
+  public long getHits() {
+    return hits;
+  }
+
+  /** @return The number of pins that had to read the page from disk */
+  public long getMisses() {
+    return misses;
+  }
+
+  /** @return The number of cached pages replaced by other pages */
+  public long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * @return The size, policy and counters of the pool
+   */
+  public synchronized String toString() {
+    return "Buffer pool: " + capacity + " pages (" + (lru ? "lru" : "clock") + "), " + hits + " hits, " + misses
+        + " misses, " + evictions + " evictions";
+  }
+}
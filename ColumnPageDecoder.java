@@ -0,0 +1,93 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * ColumnPageDecoder decodes the pages of a column file written by
+ * ColumnPageEncoder. The values of a page are decoded in one pass straight into
+ * an int buffer that the scan reads from.
+ */
+public class ColumnPageDecoder {
+
+  int[] values = new int[1024];
+
+  /**
+   * @return The buffer holding the values of the last decoded page
+   */
+  public int[] getValues() {
+    return values;
+  }
+
+  /**
+   * Decodes the values of a page into the value buffer, growing it if needed.
+   * 
+   * @param page A buffer holding a whole page, positioned at its start
+   * @return The number of values on the page
+   */
+  public int decode(ByteBuffer page) throws IOException {
+    int encoding = page.getInt();
+    int count = page.getInt();
+    if (count > values.length) {
+      values = new int[Math.max(count, values.length * 2)];
+    }
+    switch (encoding) {
+      case ColumnPageEncoder.PLAIN:
+        page.asIntBuffer().get(values, 0, count);
+        break;
+      case ColumnPageEncoder.RLE:
+        int runs = page.getInt();
+        int pos = 0;
+        for (int r = 0; r < runs; r++) {
+          int value = page.getInt();
+          int length = page.getInt();
+          for (int end = pos + length; pos < end; pos++) {
+            values[pos] = value;
+          }
+        }
+        break;
+      case ColumnPageEncoder.BIT_PACKED:
+        long min = page.getInt();
+        int bits = page.getInt();
+        unpack(page, values, 0, count, bits);
+        for (int i = 0; i < count; i++) {
+          values[i] = (int) (min + (values[i] & 0xFFFFFFFFL));
+        }
+        break;
+      case ColumnPageEncoder.DELTA:
+        int first = page.getInt();
+        long minDelta = page.getInt();
+        int deltaBits = page.getInt();
+        if (count > 0) {
+          unpack(page, values, 1, count - 1, deltaBits);
+          values[0] = first;
+          long previous = first;
+          for (int i = 1; i < count; i++) {
+            previous = previous + minDelta + (values[i] & 0xFFFFFFFFL);
+            values[i] = (int) previous;
+          }
+        }
+        break;
+      default:
+        throw new IOException("Unknown column page encoding " + encoding);
+    }
+    return count;
+  }
+
+  /**
+   * Reads n values of the given bit width, packed from the lowest bit up, into
+   * out starting at index from.
+   */
+  private static void unpack(ByteBuffer page, int[] out, int from, int n, int bits) {
+    long mask = (1L << bits) - 1;
+    long acc = 0;
+    int available = 0;
+    for (int i = from; i < from + n; i++) {
+      if (available < bits) {
+        acc |= (page.getInt() & 0xFFFFFFFFL) << available;
+        available += 32;
+      }
+      out[i] = (int) (acc & mask);
+      acc >>>= bits;
+      available -= bits;
+    }
+  }
+}
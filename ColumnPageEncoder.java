@@ -0,0 +1,228 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * ColumnPageEncoder collects the values of one column and writes them as
+ * fixed-size pages of a column file. Every page starts with an int naming its
+ * encoding and an int holding the number of values on the page. The encoding
+ * is picked per page as whichever of the following is smallest:
+ * 
+ * PLAIN: the values as packed ints.
+ * 
+ * RLE: the number of runs followed by a (value, length) pair per run.
+ * 
+ * BIT_PACKED: frame of reference, the minimum value and a bit width followed
+ * by every value minus the minimum packed into that many bits.
+ * 
+ * DELTA: the first value, the minimum difference between neighbours and a bit
+ * width followed by every difference minus the minimum, bit packed.
+ * 
+ * Values are added to the page until no encoding could fit one more value in
+ * the page, so sorted keys and low-cardinality codes put many more values on a
+ * page than the plain layout.
+ */
+public class ColumnPageEncoder {
+
+  // Pages written before encodings existed hold an arity of 1 in the first
+  // int, so 1 is kept for plain pages
+  public static final int PLAIN = 1;
+  public static final int RLE = 2;
+  public static final int BIT_PACKED = 3;
+  public static final int DELTA = 4;
+
+  public static final int MAX_VALUES = 1 << 16;
+
+  int[] values = new int[1024];
+  int count;
+  long min, max;
+  int runs;
+  long minDelta, maxDelta;
+  ByteBuffer page = ByteBuffer.allocate(BinaryTupleWriter.PAGE_SIZE);
+
+  /**
+   * Adds a value to the page being built, unless the page is full.
+   * 
+   * @param v The next value of the column
+   * @return false if the value does not fit on the current page, in which case
+   *         the page has to be written before adding it again
+   */
+  public boolean add(int v) {
+    if (count == 0) {
+      min = max = v;
+      runs = 1;
+      minDelta = maxDelta = 0;
+    } else {
+      if (count == MAX_VALUES) {
+        return false;
+      }
+      long newMin = Math.min(min, v);
+      long newMax = Math.max(max, v);
+      int newRuns = v == values[count - 1] ? runs : runs + 1;
+      long delta = (long) v - values[count - 1];
+      long newMinDelta = count == 1 ? delta : Math.min(minDelta, delta);
+      long newMaxDelta = count == 1 ? delta : Math.max(maxDelta, delta);
+      if (bestSize(count + 1, newMin, newMax, newRuns, newMinDelta, newMaxDelta) > BinaryTupleWriter.PAGE_SIZE) {
+        return false;
+      }
+      min = newMin;
+      max = newMax;
+      runs = newRuns;
+      minDelta = newMinDelta;
+      maxDelta = newMaxDelta;
+    }
+    if (count == values.length) {
+      int[] larger = new int[values.length * 2];
+      System.arraycopy(values, 0, larger, 0, count);
+      values = larger;
+    }
+    values[count++] = v;
+    return true;
+  }
+
+  /**
+   * @return The number of values on the page being built
+   */
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   * @return The smallest value on the page being built
+   */
+  public int getMin() {
+    return (int) min;
+  }
+
+  /**
+   * @return The largest value on the page being built
+   */
+  public int getMax() {
+    return (int) max;
+  }
+
+  /**
+   * @param range The difference between the largest and the smallest value
+   * @return The number of bits needed to store any value from 0 to range
+   */
+  static int bitWidth(long range) {
+    return 64 - Long.numberOfLeadingZeros(range);
+  }
+
+  /**
+   * @return The number of bytes n values take in the given encoding, or
+   *         Integer.MAX_VALUE if the encoding cannot store them
+   */
+  private static long size(int encoding, int n, long min, long max, int runs, long minDelta, long maxDelta) {
+    switch (encoding) {
+      case PLAIN:
+        return 8 + 4L * n;
+      case RLE:
+        return 12 + 8L * runs;
+      case BIT_PACKED:
+        return 16 + 4 * ((n * (long) bitWidth(max - min) + 31) / 32);
+      default:
+        if (maxDelta - minDelta > 0xFFFFFFFFL || minDelta < Integer.MIN_VALUE || minDelta > Integer.MAX_VALUE) {
+          return Integer.MAX_VALUE;
+        }
+        return 20 + 4 * (((n - 1) * (long) bitWidth(maxDelta - minDelta) + 31) / 32);
+    }
+  }
+
+  /**
+   * @return The size in bytes of the smallest encoding of n values
+   */
+  private static long bestSize(int n, long min, long max, int runs, long minDelta, long maxDelta) {
+    long best = Long.MAX_VALUE;
+    for (int encoding = PLAIN; encoding <= DELTA; encoding++) {
+      best = Math.min(best, size(encoding, n, min, max, runs, minDelta, maxDelta));
+    }
+    return best;
+  }
+
+  /**
+   * Encodes the page being built with its smallest encoding, writes it to the
+   * end of the channel and starts a new page.
+   * 
+   * @param channel The column file
+   */
+  public void writePage(FileChannel channel) throws IOException {
+    int encoding = PLAIN;
+    long best = size(PLAIN, count, min, max, runs, minDelta, maxDelta);
+    for (int e = RLE; e <= DELTA; e++) {
+      long s = size(e, count, min, max, runs, minDelta, maxDelta);
+      if (s < best) {
+        best = s;
+        encoding = e;
+      }
+    }
+    page.clear();
+    page.putInt(encoding);
+    page.putInt(count);
+    switch (encoding) {
+      case PLAIN:
+        for (int i = 0; i < count; i++) {
+          page.putInt(values[i]);
+        }
+        break;
+      case RLE:
+        page.putInt(runs);
+        int start = 0;
+        for (int i = 1; i <= count; i++) {
+          if (i == count || values[i] != values[start]) {
+            page.putInt(values[start]);
+            page.putInt(i - start);
+            start = i;
+          }
+        }
+        break;
+      case BIT_PACKED:
+        int bits = bitWidth(max - min);
+        page.putInt((int) min);
+        page.putInt(bits);
+        long acc = 0;
+        int filled = 0;
+        for (int i = 0; i < count; i++) {
+          acc |= ((values[i] - min) & 0xFFFFFFFFL) << filled;
+          filled += bits;
+          if (filled >= 32) {
+            page.putInt((int) acc);
+            acc >>>= 32;
+            filled -= 32;
+          }
+        }
+        if (filled > 0) {
+          page.putInt((int) acc);
+        }
+        break;
+      default:
+        int deltaBits = bitWidth(maxDelta - minDelta);
+        page.putInt(values[0]);
+        page.putInt((int) minDelta);
+        page.putInt(deltaBits);
+        acc = 0;
+        filled = 0;
+        for (int i = 1; i < count; i++) {
+          long delta = (long) values[i] - values[i - 1];
+          acc |= ((delta - minDelta) & 0xFFFFFFFFL) << filled;
+          filled += deltaBits;
+          if (filled >= 32) {
+            page.putInt((int) acc);
+            acc >>>= 32;
+            filled -= 32;
+          }
+        }
+        if (filled > 0) {
+          page.putInt((int) acc);
+        }
+    }
+    while (page.hasRemaining()) {
+      page.put((byte) 0);
+    }
+    page.flip();
+    while (page.hasRemaining()) {
+      channel.write(page);
+    }
+    count = 0;
+  }
+}
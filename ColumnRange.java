@@ -0,0 +1,121 @@
+import java.util.*;
+import net.sf.jsqlparser.expression.*;
+import net.sf.jsqlparser.expression.operators.relational.*;
+import net.sf.jsqlparser.schema.*;
+
+/**
+ * ColumnRange is the closed interval of values a column may take according to
+ * the conjuncts of a WHERE expression that compare the column with a constant,
+ * such as S.A < 3 or 5 <= S.A. Conjuncts of any other shape are ignored, so
+ * the range only narrows down which values can match, it does not decide
+ * whether a tuple matches.
+ */
+public class ColumnRange {
+
+  Column column;
+  long low = Long.MIN_VALUE;
+  long high = Long.MAX_VALUE;
+
+  /**
+   * Constructor for the ColumnRange class.
+   * 
+   * @param c The column the range applies to
+   * @return a ColumnRange instance allowing every value
+   */
+  public ColumnRange(Column c) {
+    column = c;
+  }
+
+  /**
+   * @param e The expression of a WHERE clause, possibly null
+   * @return The range of every column that is compared with a constant in a
+   *         conjunct of e, one range per column
+   */
+  public static ArrayList<ColumnRange> getRanges(Expression e) {
+    LinkedHashMap<String, ColumnRange> ranges = new LinkedHashMap<String, ColumnRange>();
+    for (Expression conjunct : WhereVisitor.getConjuncts(e)) {
+      if (!(conjunct instanceof BinaryExpression)) {
+        continue;
+      }
+      BinaryExpression b = (BinaryExpression) conjunct;
+      Expression left = b.getLeftExpression();
+      Expression right = b.getRightExpression();
+      boolean flipped;
+      Column c;
+      long value;
+      if (left instanceof Column && right instanceof LongValue) {
+        c = (Column) left;
+        value = ((LongValue) right).getValue();
+        flipped = false;
+      } else if (right instanceof Column && left instanceof LongValue) {
+        c = (Column) right;
+        value = ((LongValue) left).getValue();
+        flipped = true;
+      } else {
+        continue;
+      }
+      ColumnRange range = ranges.get(c.getWholeColumnName());
+      if (range == null) {
+        range = new ColumnRange(c);
+      }
+      // Read "value op column" as "column op' value"
+      if (conjunct instanceof EqualsTo) {
+        range.restrict(value, value);
+      } else if (conjunct instanceof MinorThan) {
+        range.restrict(flipped ? value + 1 : Long.MIN_VALUE, flipped ? Long.MAX_VALUE : value - 1);
+      } else if (conjunct instanceof MinorThanEquals) {
+        range.restrict(flipped ? value : Long.MIN_VALUE, flipped ? Long.MAX_VALUE : value);
+      } else if (conjunct instanceof GreaterThan) {
+        range.restrict(flipped ? Long.MIN_VALUE : value + 1, flipped ? value - 1 : Long.MAX_VALUE);
+      } else if (conjunct instanceof GreaterThanEquals) {
+        range.restrict(flipped ? Long.MIN_VALUE : value, flipped ? value : Long.MAX_VALUE);
+      } else {
+        continue;
+      }
+      ranges.put(c.getWholeColumnName(), range);
+    }
+    return new ArrayList<ColumnRange>(ranges.values());
+  }
+
+  /**
+   * Narrows the range to its intersection with [l, h].
+   */
+  public void restrict(long l, long h) {
+    low = Math.max(low, l);
+    high = Math.min(high, h);
+  }
+
+  /** @return The column the range applies to */
+  public Column getColumn() {
+    return column;
+  }
+
+  /** @return The smallest value the column may take */
+  public long getLow() {
+    return low;
+  }
+
+  /** @return The largest value the column may take */
+  public long getHigh() {
+    return high;
+  }
+
+  /** @return true if no value can satisfy the conjuncts */
+  public boolean isEmpty() {
+    return low > high;
+  }
+
+  /**
+   * @param min The smallest value in a set of values
+   * @param max The largest value in the set
+   * @return true if some value of the set may lie in the range
+   */
+  public boolean overlaps(long min, long max) {
+    return min <= high && max >= low;
+  }
+
+  /** @return The range written as "column in [low, high]" */
+  public String toString() {
+    return column.getWholeColumnName() + " in [" + low + ", " + high + "]";
+  }
+}
@@ -0,0 +1,111 @@
+import java.util.*;
+
+/**
+ * ColumnStats holds the statistics ANALYZE collects for one column: the
+ * smallest and largest value, the number of distinct values (NDV), and an
+ * equi-depth histogram. The histogram is stored as the bucket boundaries, the
+ * value at every 1/buckets quantile, so every bucket holds about the same
+ * number of rows.
+ */
+public class ColumnStats {
+
+  int min;
+  int max;
+  long ndv;
+  int[] bounds;
+
+  /**
+   * Constructor for the ColumnStats class.
+   * 
+   * @param mn     The smallest value of the column
+   * @param mx     The largest value of the column
+   * @param d      The number of distinct values
+   * @param b      The histogram bucket boundaries, in ascending order
+   * @return a ColumnStats instance
+   */
+  public ColumnStats(int mn, int mx, long d, int[] b) {
+    min = mn;
+    max = mx;
+    ndv = d;
+    bounds = b;
+  }
+
+  /** @return The smallest value of the column */
+  public int getMin() {
+    return min;
+  }
+
+  /** @return The largest value of the column */
+  public int getMax() {
+    return max;
+  }
+
+  /** @return The estimated number of distinct values in the column */
+  public long getDistinct() {
+    return ndv;
+  }
+
+  /** @return The boundaries of the equi-depth histogram */
+  public int[] getBounds() {
+    return bounds;
+  }
+
+  /**
+   * Estimates the fraction of rows whose value lies in a range. An equality is
+   * estimated from the number of distinct values, a wider range from the
+   * histogram, assuming values are spread evenly inside a bucket.
+   * 
+   * @param low  The smallest value of the range
+   * @param high The largest value of the range
+   * @return A fraction between 0 and 1
+   */
+  public double estimateSelectivity(long low, long high) {
+    if (low > high || high < min || low > max) {
+      return 0;
+    }
+    if (low == high) {
+      return 1.0 / Math.max(ndv, 1);
+    }
+    int buckets = bounds.length - 1;
+    if (buckets < 1) {
+      return 1;
+    }
+    double fraction = 0;
+    for (int b = 0; b < buckets; b++) {
+      long lo = bounds[b];
+      long hi = bounds[b + 1];
+      long from = Math.max(lo, low);
+      long to = Math.min(hi, high);
+      if (from <= to) {
+        fraction += (double) (to - from + 1) / (hi - lo + 1);
+      }
+    }
+    return Math.min(1, fraction / buckets);
+  }
+
+  /**
+   * @return The statistics as space separated fields: min, max, NDV and the
+   *         histogram boundaries
+   */
+  public String toString() {
+    StringBuilder s = new StringBuilder();
+    s.append(min).append(' ').append(max).append(' ').append(ndv);
+    for (int b : bounds) {
+      s.append(' ').append(b);
+    }
+    return s.toString();
+  }
+
+  /**
+   * @param fields The fields written by toString
+   * @return The statistics the fields describe
+   */
+  public static ColumnStats parse(String[] fields) {
+    int[] bounds = new int[fields.length - 3];
+    for (int i = 0; i < bounds.length; i++) {
+      bounds[i] = Integer.parseInt(fields[3 + i]);
+    }
+    return new ColumnStats(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]), Long.parseLong(fields[2]),
+        bounds);
+  }
+}
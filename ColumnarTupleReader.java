@@ -0,0 +1,229 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+/**
+ * ColumnarTupleReader reads a table stored in the columnar format written by
+ * ColumnarTupleWriter. Only the files of the requested columns are opened, so
+ * the columns a query does not reference are never read from disk. The tuples
+ * it returns hold the requested columns in the order they were given. When the
+ * BufferPool is enabled the pages are pinned in the shared pool while they are
+ * decoded.
+ * 
+ * Columns are paged independently, so the reader keeps track of the number of
+ * the next row and of the first row of the page loaded for every column. When
+ * it is given candidate rows it uses the zone maps of the column files to jump
+ * straight to the pages holding them.
+ */
+public class ColumnarTupleReader implements TupleReader {
+
+  File dir;
+  ArrayList<String> columns;
+  FileChannel[] channels;
+  String[] paths;
+  long[] pageNos;
+  long[] pageStarts;
+  BufferPool pool;
+  boolean pooled;
+  ByteBuffer page = ByteBuffer.allocate(BinaryTupleWriter.PAGE_SIZE);
+  ColumnPageDecoder[] decoders;
+  int[][] values;
+  int[] counts;
+  // Number of the next row to be returned
+  long row;
+  // Rows that may be of interest and the zone maps used to find them
+  long[][] candidates;
+  int candidate;
+  JoinFilters joinFilters = new JoinFilters();
+  ZoneMap[] zones;
+
+  /**
+   * Constructor for the ColumnarTupleReader class.
+   * 
+   * @param d    The directory holding the column files of the table
+   * @param cols The names of the columns to be read
+   * @return a ColumnarTupleReader instance
+   */
+  public ColumnarTupleReader(File d, ArrayList<String> cols) throws IOException {
+    dir = d;
+    columns = cols;
+    pool = BufferPool.getInstance();
+    pooled = pool.isEnabled();
+    channels = new FileChannel[columns.size()];
+    paths = new String[columns.size()];
+    pageNos = new long[columns.size()];
+    pageStarts = new long[columns.size()];
+    decoders = new ColumnPageDecoder[columns.size()];
+    values = new int[columns.size()][];
+    counts = new int[columns.size()];
+    for (int i = 0; i < columns.size(); i++) {
+      paths[i] = new File(dir, columns.get(i)).getPath();
+      if (!pooled) {
+        channels[i] = new FileInputStream(paths[i]).getChannel();
+      }
+      decoders[i] = new ColumnPageDecoder();
+    }
+    reset();
+  }
+
+  /**
+   * Reads a page of a column file and decodes its values straight into the
+   * column's int buffer.
+   * 
+   * @param c The index of the column
+   * @param n The number of the page
+   * @return false if the column has no such page
+   */
+  private boolean readPage(int c, long n) throws IOException {
+    if (pooled) {
+      ByteBuffer p = pool.pin(paths[c], n);
+      if (p == null) {
+        return false;
+      }
+      counts[c] = decoders[c].decode(p);
+      pool.unpin(paths[c], n);
+    } else {
+      page.clear();
+      long offset = n * BinaryTupleWriter.PAGE_SIZE;
+      while (page.hasRemaining()) {
+        if (channels[c].read(page, offset + page.position()) == -1) {
+          break;
+        }
+      }
+      if (page.position() < BinaryTupleWriter.HEADER_SIZE) {
+        return false;
+      }
+      page.flip();
+      counts[c] = decoders[c].decode(page);
+    }
+    values[c] = decoders[c].getValues();
+    pageNos[c] = n;
+    return true;
+  }
+
+  /**
+   * Loads the page of a column that holds the current row. Without zone maps
+   * this is the page after the loaded one.
+   * 
+   * @param c The index of the column
+   * @return false if the column has no more rows
+   */
+  private boolean seekPage(int c) throws IOException {
+    if (zones != null) {
+      int n = zones[c].findPage(row);
+      if (n == -1 || !readPage(c, n)) {
+        return false;
+      }
+      pageStarts[c] = zones[c].getRowStart(n);
+      return true;
+    }
+    long start = pageStarts[c] + counts[c];
+    if (!readPage(c, pageNos[c] + 1)) {
+      return false;
+    }
+    pageStarts[c] = start;
+    return true;
+  }
+
+  /**
+   * Assembles the next tuple from the value of every requested column in the
+   * next row, skipping to the next candidate row if there are candidates and
+   * skipping the rows a join filter rules out.
+   * 
+   * @return The next tuple in the table, or null at the end of the table
+   */
+  public Tuple readNextTuple() throws IOException {
+    int[] tuple = new int[channels.length];
+    while (readRow(tuple)) {
+      if (joinFilters.accepts(tuple, 0)) {
+        return new Tuple(tuple);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Reads the value of every requested column in the next row.
+   * 
+   * @param tuple The array the values are put in
+   * @return false at the end of the table
+   */
+  private boolean readRow(int[] tuple) throws IOException {
+    if (candidates != null) {
+      while (candidate < candidates.length && row >= candidates[candidate][1]) {
+        candidate++;
+      }
+      if (candidate == candidates.length) {
+        return false;
+      }
+      row = Math.max(row, candidates[candidate][0]);
+    }
+    for (int c = 0; c < channels.length; c++) {
+      while (row >= pageStarts[c] + counts[c]) {
+        if (!seekPage(c)) {
+          return false;
+        }
+      }
+      tuple[c] = values[c][(int) (row - pageStarts[c])];
+    }
+    row++;
+    return true;
+  }
+
+  /**
+   * Skips the rows the filter rules out from now on.
+   * 
+   * @param column The position of the filtered column among the requested ones
+   * @param f      The filter
+   */
+  public void addJoinFilter(int column, JoinFilter f) {
+    joinFilters.add(column, f);
+  }
+
+  /**
+   * Skips the pages without candidate rows from now on, using the zone maps of
+   * the column files. If a column file has no zone map every row is read.
+   * 
+   * @param ranges The rows of interest, or null for every row
+   */
+  public void setCandidateRows(long[][] ranges) throws IOException {
+    candidates = null;
+    zones = null;
+    if (ranges != null) {
+      ZoneMap[] maps = new ZoneMap[channels.length];
+      for (int c = 0; c < channels.length; c++) {
+        maps[c] = ZoneMap.read(ZoneMap.getZoneFile(paths[c]));
+        if (maps[c] == null) {
+          reset();
+          return;
+        }
+      }
+      zones = maps;
+      candidates = ranges;
+    }
+    reset();
+  }
+
+  /** Resets every column file to its first page. */
+  public void reset() throws IOException {
+    row = 0;
+    candidate = 0;
+    for (int c = 0; c < channels.length; c++) {
+      pageNos[c] = -1;
+      pageStarts[c] = 0;
+      counts[c] = 0;
+    }
+  }
+
+  /** Closes the column files. */
+  public void close() throws IOException {
+    for (FileChannel channel : channels) {
+      if (channel != null) {
+        channel.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,87 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+/**
+ * ColumnarTupleWriter writes a table in the columnar format. Every column of
+ * the table is stored in its own file inside the table's directory, named
+ * after the column. Each column file is a sequence of fixed-size pages, each
+ * encoded by a ColumnPageEncoder with whichever lightweight compression suits
+ * the values on that page. Columns are paged independently, so a column that
+ * compresses well needs fewer pages. Every column file gets a ZoneMap sidecar
+ * with the min and max of each of its pages.
+ */
+public class ColumnarTupleWriter implements TupleWriter {
+
+  FileChannel[] channels;
+  ColumnPageEncoder[] encoders;
+  ZoneMap[] zones;
+  File[] files;
+
+  /**
+   * Constructor for the ColumnarTupleWriter class.
+   * 
+   * @param dir    The directory the column files are written to, created if it
+   *               does not exist
+   * @param schema The column names of the table, in the order of the tuples
+   * @return a ColumnarTupleWriter instance
+   */
+  public ColumnarTupleWriter(File dir, ArrayList<String> schema) throws IOException {
+    dir.mkdirs();
+    channels = new FileChannel[schema.size()];
+    encoders = new ColumnPageEncoder[schema.size()];
+    zones = new ZoneMap[schema.size()];
+    files = new File[schema.size()];
+    for (int i = 0; i < schema.size(); i++) {
+      files[i] = new File(dir, schema.get(i));
+      channels[i] = new FileOutputStream(files[i]).getChannel();
+      encoders[i] = new ColumnPageEncoder();
+      zones[i] = new ZoneMap();
+    }
+  }
+
+  /**
+   * Adds every value of the tuple to the current page of its column, writing
+   * out a column's page when the value does not fit on it.
+   * 
+   * @param t The tuple to be written
+   */
+  public void writeTuple(Tuple t) throws IOException {
+    if (t.size() != channels.length) {
+      throw new IOException("Tuple arity " + t.size() + " does not match table arity " + channels.length);
+    }
+    for (int i = 0; i < channels.length; i++) {
+      if (!encoders[i].add(t.getColumn(i))) {
+        writePage(i);
+        encoders[i].add(t.getColumn(i));
+      }
+    }
+  }
+
+  /**
+   * Records the current page of a column in its zone map and writes it out.
+   * 
+   * @param i The index of the column
+   */
+  private void writePage(int i) throws IOException {
+    ColumnPageEncoder encoder = encoders[i];
+    zones[i].addPage(encoder.getCount(), new int[] { encoder.getMin() }, new int[] { encoder.getMax() });
+    encoder.writePage(channels[i]);
+  }
+
+  /**
+   * Writes out the last partially filled pages and closes the column files and
+   * their zone maps.
+   */
+  public void close() throws IOException {
+    for (int i = 0; i < channels.length; i++) {
+      if (encoders[i].getCount() > 0) {
+        writePage(i);
+      }
+      channels[i].close();
+      zones[i].write(ZoneMap.getZoneFile(files[i].getPath()));
+    }
+  }
+}
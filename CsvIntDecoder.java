@@ -0,0 +1,202 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * CsvIntDecoder parses lines of comma separated integers straight from raw
+ * bytes into a reusable int buffer, so no String, String[] or boxed Integer is
+ * created per line or per field. Every value may have a leading sign and be
+ * surrounded by spaces or tabs, and lines may end in "\n" or "\r\n". Blank
+ * lines are skipped. A malformed value is reported as an IOException naming
+ * the file and the line number.
+ * 
+ * The decoder either streams bytes from a channel through readLine, or decodes
+ * lines out of a buffer owned by the caller through decodeLine.
+ */
+public class CsvIntDecoder {
+
+  public static final int BUFFER_SIZE = 64 * 1024;
+
+  String source;
+  ReadableByteChannel channel;
+  ByteBuffer buffer;
+  boolean endOfInput;
+  int[] row = new int[16];
+  int lineNumber;
+
+  /**
+   * Constructor for a CsvIntDecoder that decodes lines from a buffer owned by
+   * the caller.
+   * 
+   * @param name The name of the file being decoded, used in error messages
+   * @return a CsvIntDecoder instance
+   */
+  public CsvIntDecoder(String name) {
+    source = name;
+  }
+
+  /**
+   * Constructor for a CsvIntDecoder that streams bytes from a channel.
+   * 
+   * @param name The name of the file being decoded, used in error messages
+   * @param ch   The channel the bytes are read from
+   * @return a CsvIntDecoder instance
+   */
+  public CsvIntDecoder(String name, ReadableByteChannel ch) {
+    source = name;
+    buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    reset(ch);
+  }
+
+  /**
+   * Starts decoding from the beginning of a channel again.
+   * 
+   * @param ch The channel the bytes are read from, positioned at its start
+   */
+  public void reset(ReadableByteChannel ch) {
+    channel = ch;
+    buffer.clear();
+    buffer.flip();
+    endOfInput = false;
+    lineNumber = 0;
+  }
+
+  /**
+   * Restarts the line count for a caller that decodes from its own buffer.
+   */
+  public void reset() {
+    lineNumber = 0;
+  }
+
+  /**
+   * @return The buffer holding the values of the last decoded line. It is reused
+   *         by the next call, so its contents must be copied to be kept.
+   */
+  public int[] getRow() {
+    return row;
+  }
+
+  /**
+   * Reads the next non-blank line from the channel and decodes it into the row
+   * buffer.
+   * 
+   * @return The number of values on the line, or -1 at the end of the input
+   */
+  public int readLine() throws IOException {
+    while (true) {
+      int start = buffer.position();
+      int limit = buffer.limit();
+      int end = start;
+      while (end < limit && buffer.get(end) != '\n') {
+        end++;
+      }
+      if (end == limit && !endOfInput) {
+        fill();
+        continue;
+      }
+      if (start == limit) {
+        return -1;
+      }
+      buffer.position(end == limit ? end : end + 1);
+      int columns = decodeLine(buffer, start, end);
+      if (columns > 0) {
+        return columns;
+      }
+    }
+  }
+
+  /**
+   * Moves the unread bytes to the front of the buffer and reads more bytes
+   * behind them, growing the buffer if a single line fills all of it.
+   */
+  private void fill() throws IOException {
+    buffer.compact();
+    if (!buffer.hasRemaining()) {
+      ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+      buffer.flip();
+      larger.put(buffer);
+      buffer = larger;
+    }
+    if (channel.read(buffer) == -1) {
+      endOfInput = true;
+    }
+    buffer.flip();
+  }
+
+  /**
+   * Decodes one line of comma separated integers into the row buffer.
+   * 
+   * @param buf   The buffer holding the line
+   * @param start The position of the first byte of the line
+   * @param end   The position just past the last byte of the line, excluding
+   *              the "\n"
+   * @return The number of values on the line, 0 if the line is blank
+   */
+  public int decodeLine(ByteBuffer buf, int start, int end) throws IOException {
+    lineNumber++;
+    int columns = 0;
+    int i = skipSpaces(buf, start, end);
+    if (i == end) {
+      return 0;
+    }
+    while (true) {
+      i = skipSpaces(buf, i, end);
+      boolean negative = false;
+      if (i < end && (buf.get(i) == '-' || buf.get(i) == '+')) {
+        negative = buf.get(i) == '-';
+        i++;
+      }
+      long value = 0;
+      int digits = 0;
+      byte b;
+      while (i < end && (b = buf.get(i)) >= '0' && b <= '9') {
+        value = value * 10 + (b - '0');
+        if (value > 2147483648L) {
+          throw malformed(columns);
+        }
+        digits++;
+        i++;
+      }
+      if (digits == 0 || (!negative && value > Integer.MAX_VALUE)) {
+        throw malformed(columns);
+      }
+      if (columns == row.length) {
+        row = Arrays.copyOf(row, columns * 2);
+      }
+      row[columns++] = (int) (negative ? -value : value);
+      i = skipSpaces(buf, i, end);
+      if (i == end) {
+        return columns;
+      }
+      if (buf.get(i) != ',') {
+        throw malformed(columns - 1);
+      }
+      i++;
+    }
+  }
+
+  /**
+   * @return The position of the first byte at or after i that is not a space, a
+   *         tab or a carriage return
+   */
+  private static int skipSpaces(ByteBuffer buf, int i, int end) {
+    while (i < end) {
+      byte b = buf.get(i);
+      if (b != ' ' && b != '\t' && b != '\r') {
+        break;
+      }
+      i++;
+    }
+    return i;
+  }
+
+  /**
+   * @param column The zero based index of the value that could not be decoded
+   * @return The exception describing where the malformed value is
+   */
+  private IOException malformed(int column) {
+    return new IOException("Malformed integer in " + source + " at line " + lineNumber + ", column "
+        + (column + 1));
+  }
+}
@@ -19,6 +19,13 @@ public class DBMSMain {
     DatabaseCatalog catalog = DatabaseCatalog.getInstance();
     catalog.fillCatalogHash(input);
 
+    // Share a buffer pool between all scans if config.txt sizes one
+    BufferPool pool = BufferPool.getInstance();
+    String poolPages = catalog.getSetting("buffer_pool_pages", null);
+    if (poolPages != null) {
+      pool.configure(Integer.parseInt(poolPages), catalog.getSetting("buffer_pool_policy", null));
+    }
+
     try {
 
       // Use the JSqlParser to read in queries
@@ -32,15 +39,21 @@ public class DBMSMain {
         File newQuery = new File(output + File.separator + "query" + i);
         FileWriter fileWriter = new FileWriter(newQuery);
         BufferedWriter writer = new BufferedWriter(fileWriter);
+        Operator op = null;
         try {
           // Parses query
           Select select = (Select) statement;
           // Initializes operator and gets query plan to execute query
-          Operator op = planner.getQueryPlan(select, writer);
+          op = planner.getQueryPlan(select, writer);
           // Prints to file
           op.dump();
         } catch (Exception e) {
           e.printStackTrace();
+        } finally {
+          // Releases the files and threads of the plan even if the query failed
+          if (op != null) {
+            op.close();
+          }
         }
         writer.close();
         i++;
@@ -49,6 +62,16 @@ public class DBMSMain {
       System.err.println("Exception occurred during parsing");
       e.printStackTrace();
     }
+    if (pool.isEnabled()) {
+      System.out.println(pool);
+    }
+    if (BloomFilter.getProbes() > 0) {
+      System.out.println("Bloom filters: " + BloomFilter.getProbes() + " probes, " + BloomFilter.getPruned()
+          + " pruned");
+    }
+    if (JoinFilter.getDropped() > 0) {
+      System.out.println("Join filters: " + JoinFilter.getDropped() + " rows dropped");
+    }
 
   }
 }
\ No newline at end of file
@@ -1,7 +1,9 @@
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.util.*;
 
@@ -22,6 +24,11 @@ public class DatabaseCatalog {
 
   HashMap<String, ArrayList<String>> schemas = new HashMap<String, ArrayList<String>>();
   HashMap<String, String> paths = new HashMap<String, String>();
+  HashMap<String, String> settings = new HashMap<String, String>();
+  HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+  ArrayList<IndexInfo> indexes = new ArrayList<IndexInfo>();
+  HashMap<String, BloomFilter> blooms = new HashMap<String, BloomFilter>();
+  String dbPath;
 
   /**
    * Initializes the catalog array list
@@ -48,6 +55,8 @@ public class DatabaseCatalog {
    */
   public void fillCatalogHash(String inputPath) {
     String st;
+    dbPath = inputPath + File.separator + "db";
+    loadSettings();
 
     try {
       File file = new File(inputPath + File.separator + "db" + File.separator + "schema.txt");
@@ -62,13 +71,322 @@ public class DatabaseCatalog {
         ArrayList<String> c = new ArrayList<String>(Arrays.asList(schema));
         c.remove(0);
         schemas.put(schema[0], c);
-        paths.put(schema[0], inputPath + File.separator + "db" + File.separator + "data" + File.separator + schema[0]);
+        paths.put(schema[0], getDataPath(schema[0], getFormat(schema[0])));
       }
+      stats = TableStats.read(getStatsFile());
+      indexes = IndexInfo.read(new File(dbPath + File.separator + "index_info.txt"),
+          new File(dbPath + File.separator + "indexes"));
     } catch (IOException e) {
       System.out.println(e);
     }
   }
 
+  /**
+   * @return The stats.txt file next to schema.txt written by Analyzer
+   */
+  public File getStatsFile() {
+    return new File(dbPath + File.separator + "stats.txt");
+  }
+
+  /**
+   * @param tbName A string representing the table name
+   * @return The statistics collected for the table, or null if the table has not
+   *         been analyzed
+   */
+  public TableStats getStats(String tbName) {
+    return stats.get(tbName);
+  }
+
+  /**
+   * @param tbName A string representing the table name
+   * @param column The name of a column of the table
+   * @return The file holding the Bloom filter of the column
+   */
+  public File getBloomFile(String tbName, String column) {
+    return new File(dbPath + File.separator + "data" + File.separator + tbName + "." + column + ".bloom");
+  }
+
+  /**
+   * @param tbName A string representing the table name
+   * @param column The name of a column of the table
+   * @return true if "bloom_columns" lists the column for the table
+   */
+  public boolean isBloomColumn(String tbName, String column) {
+    String columns = getSetting("bloom_columns", tbName);
+    if (columns != null) {
+      for (String col : columns.split(",")) {
+        if (col.trim().equals(column)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param tbName A string representing the table name
+   * @param column The name of a column of the table
+   * @return The Bloom filter Analyzer built for the column, or null if there is
+   *         none, the column is no longer listed in "bloom_columns", or
+   *         "bloom_filters off" is set for the table
+   */
+  public BloomFilter getBloomFilter(String tbName, String column) {
+    if ("off".equals(getSetting("bloom_filters", tbName)) || !isBloomColumn(tbName, column)) {
+      return null;
+    }
+    String key = tbName + "." + column;
+    if (!blooms.containsKey(key)) {
+      try {
+        blooms.put(key, BloomFilter.read(getBloomFile(tbName, column)));
+      } catch (IOException e) {
+        System.out.println(e);
+        blooms.put(key, null);
+      }
+    }
+    return blooms.get(key);
+  }
+
+  /**
+   * @return Every index declared in index_info.txt, in the order of the file
+   */
+  public ArrayList<IndexInfo> getIndexes() {
+    return indexes;
+  }
+
+  /**
+   * @param tbName A string representing the table name
+   * @return The indexes on the table that can be used by scans: the table must
+   *         be stored in the binary format and the index must have been built
+   */
+  public ArrayList<IndexInfo> getIndexes(String tbName) {
+    ArrayList<IndexInfo> result = new ArrayList<IndexInfo>();
+    if (!getFormat(tbName).equals("binary")) {
+      return result;
+    }
+    for (IndexInfo index : indexes) {
+      if (index.getTable().equals(tbName) && index.getFile().exists()) {
+        result.add(index);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @param tbName A string representing the table name
+   * @param t      The new statistics of the table
+   * 
+   *               Replaces the statistics of the table and rewrites stats.txt.
+   */
+  public void saveStats(String tbName, TableStats t) throws IOException {
+    stats.put(tbName, t);
+    TableStats.write(getStatsFile(), new TreeMap<String, TableStats>(stats));
+  }
+
+  /**
+   * Fills the settings HashMap from the optional config.txt next to schema.txt.
+   * Every line is either "key value", which applies to all tables, or
+   * "key table value", which applies to a single table only. For example
+   * "format Sailors binary" records that Sailors is stored in binary pages.
+   */
+  private void loadSettings() {
+    settings.clear();
+    File file = new File(dbPath + File.separator + "config.txt");
+    if (!file.exists()) {
+      return;
+    }
+    try {
+      BufferedReader reader = new BufferedReader(new FileReader(file));
+      String st;
+      while ((st = reader.readLine()) != null) {
+        String[] setting = st.trim().split("\\s+");
+        if (setting.length == 2) {
+          settings.put(setting[0], setting[1]);
+        } else if (setting.length == 3) {
+          settings.put(setting[0] + "." + setting[1], setting[2]);
+        }
+      }
+      reader.close();
+    } catch (IOException e) {
+      System.out.println(e);
+    }
+  }
+
+  /**
+   * @param key    The name of the setting
+   * @param tbName The table the setting is looked up for, or null for the global
+   *               value
+   * @return The value set for the table if there is one, otherwise the global
+   *         value, or null if the setting is not present
+   */
+  public String getSetting(String key, String tbName) {
+    if (tbName != null && settings.containsKey(key + "." + tbName)) {
+      return settings.get(key + "." + tbName);
+    }
+    return settings.get(key);
+  }
+
+  /**
+   * @param key    The name of the setting
+   * @param tbName The table the setting applies to, or null for a global setting
+   * @param value  The new value of the setting
+   * 
+   *               Records the setting in config.txt, replacing an earlier line
+   *               for the same key and table, and updates the catalog in memory.
+   */
+  public void saveSetting(String key, String tbName, String value) {
+    String prefix = tbName == null ? key + " " : key + " " + tbName + " ";
+    File file = new File(dbPath + File.separator + "config.txt");
+    ArrayList<String> lines = new ArrayList<String>();
+    try {
+      if (file.exists()) {
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        String st;
+        while ((st = reader.readLine()) != null) {
+          String line = st.trim().replaceAll("\\s+", " ");
+          if (!line.startsWith(prefix) || line.substring(prefix.length()).contains(" ")) {
+            lines.add(st);
+          }
+        }
+        reader.close();
+      }
+      lines.add(prefix + value);
+      BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+      for (String line : lines) {
+        writer.write(line);
+        writer.newLine();
+      }
+      writer.close();
+    } catch (IOException e) {
+      System.out.println(e);
+    }
+    settings.put(tbName == null ? key : key + "." + tbName, value);
+    if (tbName != null && paths.containsKey(tbName)) {
+      paths.put(tbName, getDataPath(tbName, getFormat(tbName)));
+    }
+  }
+
+  /**
+   * @param tbName A string representing the table name
+   * @return The storage format of the table, "text" unless config.txt says
+   *         otherwise
+   */
+  public String getFormat(String tbName) {
+    String format = getSetting("format", tbName);
+    if (format == null) {
+      return "text";
+    }
+    return format;
+  }
+
+  /**
+   * @param tbName A string representing the table name
+   * @param format The storage format of the data file
+   * @return The path of the data file holding the table in the given format. A
+   *         columnar table is a directory holding one file per column.
+   */
+  public String getDataPath(String tbName, String format) {
+    String path = dbPath + File.separator + "data" + File.separator + tbName;
+    if (format.equals("binary")) {
+      return path + ".bin";
+    }
+    if (format.equals("columnar")) {
+      return path + ".col";
+    }
+    return path;
+  }
+
+  /**
+   * @param tbName A string representing the table name
+   * @return true if scans of the table can skip the columns a query does not
+   *         reference
+   */
+  public boolean isColumnar(String tbName) {
+    return getFormat(tbName).equals("columnar");
+  }
+
+  /**
+   * @param prefix A short name describing what the file holds
+   * @return A new empty file in the directory named by the "temp_dir" setting,
+   *         or in the system temporary directory, deleted when the program exits
+   */
+  public File createTempFile(String prefix) throws IOException {
+    String dir = getSetting("temp_dir", null);
+    File file = File.createTempFile(prefix, ".bin", dir == null ? null : new File(dir));
+    file.deleteOnExit();
+    return file;
+  }
+
+  /**
+   * @param key          The name of the setting
+   * @param defaultValue The value used when the setting is not present
+   * @return The global value of an integer setting
+   */
+  public int getIntSetting(String key, int defaultValue) {
+    String value = getSetting(key, null);
+    if (value == null) {
+      return defaultValue;
+    }
+    return Integer.parseInt(value);
+  }
+
+  /**
+   * @return The path of the db directory holding schema.txt and the data files
+   */
+  public String getDbPath() {
+    return dbPath;
+  }
+
+  /**
+   * @param tbName A string representing the table name
+   * @return A TupleReader over the data file of the table, chosen by the format
+   *         recorded for the table. Setting "scan_mode mapped", globally or for
+   *         the table, reads the file through a memory mapping instead, with
+   *         windows of "scan_window" bytes.
+   */
+  public TupleReader getTupleReader(String tbName) throws IOException {
+    return getTupleReader(tbName, getSchema(tbName));
+  }
+
+  /**
+   * @param tbName  A string representing the table name
+   * @param columns The columns the caller needs, in schema order
+   * @return A TupleReader over the data file of the table. A columnar table is
+   *         read through a ColumnarTupleReader returning only the given columns,
+   *         other formats always return every column of the table. Setting
+   *         "scan_prefetch" to a number of batches, globally or for the table,
+   *         reads ahead of the scan in a background thread.
+   */
+  public TupleReader getTupleReader(String tbName, ArrayList<String> columns) throws IOException {
+    TupleReader reader = openReader(tbName, columns);
+    String prefetch = getSetting("scan_prefetch", tbName);
+    if (prefetch != null && Integer.parseInt(prefetch) > 0) {
+      return new PrefetchTupleReader(reader, Integer.parseInt(prefetch));
+    }
+    return reader;
+  }
+
+  /**
+   * @param tbName  A string representing the table name
+   * @param columns The columns the caller needs, in schema order
+   * @return A TupleReader matching the format and scan mode of the table
+   */
+  private TupleReader openReader(String tbName, ArrayList<String> columns) throws IOException {
+    File file = new File(getTbPath(tbName));
+    if (getFormat(tbName).equals("columnar")) {
+      return new ColumnarTupleReader(file, columns);
+    }
+    boolean binary = getFormat(tbName).equals("binary");
+    if ("mapped".equals(getSetting("scan_mode", tbName))) {
+      String window = getSetting("scan_window", tbName);
+      long windowSize = window == null ? MappedTupleReader.DEFAULT_WINDOW_SIZE : Long.parseLong(window);
+      return new MappedTupleReader(file, binary, windowSize);
+    }
+    if (binary) {
+      return new BinaryTupleReader(file);
+    }
+    return new TextTupleReader(file);
+  }
+
   /**
    * @param tbName A string representing the table name
    * @return ArrayList<String> The schema for the table named tbName
@@ -89,6 +407,13 @@ public class DatabaseCatalog {
     return paths.get(tbName);
   }
 
+  /**
+   * @return The names of all tables in schema.txt
+   */
+  public Set<String> getTableNames() {
+    return schemas.keySet();
+  }
+
   /**
    * @return String Representation of Catalog
    * 
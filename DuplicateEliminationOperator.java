@@ -45,6 +45,11 @@ public class DuplicateEliminationOperator extends Operator {
     return schema;
   }
 
+  /** Closes the child */
+  public void close() {
+    sorter.close();
+  }
+
   /** Reset to the beginning of the tuples by resetting the sorter */
   public void reset() {
     sorter.reset();
@@ -0,0 +1,377 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import net.sf.jsqlparser.expression.*;
+
+/**
+ * GraceHashJoinOperator is a hash join that holds at most a budget of pages of
+ * the build side in memory. The build side is split by a hash of its join key
+ * into partitions, which all start in memory; whenever the budget is exceeded
+ * the largest partition still in memory is spilled to a temporary binary file,
+ * and its later tuples go straight to that file. The probe side is then read
+ * once: a tuple whose partition is in memory is looked up in the hash table
+ * right away, and any other tuple is written to the probe file of its
+ * partition.
+ *
+ * Every spilled partition is afterwards joined with its probe file in a pass of
+ * its own, which partitions it again with a different hash if it still does not
+ * fit, so partitions are split recursively until they do. After MAX_LEVEL
+ * passes a partition is held in memory whatever its size, as it can only be
+ * that large if most of its tuples share a key. If everything fits, no file is
+ * written and the join works like HashJoinOperator.
+ *
+ * The first pass also builds a JoinFilter of the first key column of the build
+ * side, as large as the budget, and pushes it down to the probe side.
+ */
+public class GraceHashJoinOperator extends JoinOperator {
+
+  static final int MAX_LEVEL = 8;
+
+  boolean buildLeft;
+  int[] buildKeys;
+  int[] probeKeys;
+  Expression residual;
+  // Number of build tuples held in memory, and number of partitions per pass
+  int budget;
+  int fanout;
+
+  // The current pass: how many times its tuples have been partitioned, the
+  // files it reads, null when it reads the children, and its spilled partitions
+  int level;
+  TupleReader buildReader;
+  TupleReader probeReader;
+  File buildFile;
+  File probeFile;
+  boolean[] spilled;
+  File[] buildFiles;
+  File[] probeFiles;
+  TupleWriter[] buildWriters;
+  TupleWriter[] probeWriters;
+  int[] probeCounts;
+  HashMap<Tuple, ArrayList<Tuple>> table;
+  boolean done;
+
+  // Spilled partitions waiting for a pass: the build file, the probe file and
+  // the level of the pass
+  ArrayDeque<Object[]> pending = new ArrayDeque<Object[]>();
+
+  // The probe tuple and the build tuples with the same key
+  Tuple probe;
+  ArrayList<Tuple> matches;
+  int match;
+
+  /**
+   * Constructor for the GraceHashJoinOperator class.
+   *
+   * @param l     The left child operator
+   * @param r     The right child operator
+   * @param e     The join condition, with at least one equality of a left and a
+   *              right column
+   * @param b     true to build the hash tables on the left child, false to
+   *              build them on the right child
+   * @param pages The number of pages of build tuples that may be held in memory
+   * @return a GraceHashJoinOperator instance
+   */
+  public GraceHashJoinOperator(Operator l, Operator r, Expression e, boolean b, int pages) {
+    super(l, r, e);
+    buildLeft = b;
+    int[][] keys = getJoinKeys();
+    buildKeys = buildLeft ? keys[0] : keys[1];
+    probeKeys = buildLeft ? keys[1] : keys[0];
+    residual = getResidual();
+    int arity = (buildLeft ? leftSchema : rightSchema).size();
+    pages = Math.max(pages, 1);
+    budget = pages * BinaryTupleReader.getCapacity(arity);
+    // One page of every spilled partition is buffered for writing
+    fanout = Math.min(Math.max(pages - 1, 2), 64);
+  }
+
+  /**
+   * The children are read once, by the first pass, and later passes read the
+   * partition files, so the right child is never materialized.
+   */
+  void prepareInner() {
+  }
+
+  /**
+   * @param k A join key
+   * @return The partition of the key in the current pass, from a hash that
+   *         differs between passes
+   */
+  private int partition(Tuple k) {
+    int h = k.hashCode() ^ (level * 0x85EBCA6B);
+    h *= 0x9E3779B1;
+    h ^= h >>> 15;
+    h *= 0x85EBCA6B;
+    h ^= h >>> 13;
+    return (h & 0x7fffffff) % fanout;
+  }
+
+  /**
+   * @return The next left tuple, starting with the one read when the join was
+   *         created or reset
+   */
+  private Tuple nextLeft() {
+    if (leftTuple != null) {
+      Tuple t = leftTuple;
+      leftTuple = null;
+      return t;
+    }
+    return nextLeftTuple();
+  }
+
+  /**
+   * @return The next tuple of the build side of the current pass
+   */
+  private Tuple nextBuild() throws IOException {
+    if (buildReader != null) {
+      return buildReader.readNextTuple();
+    }
+    return buildLeft ? nextLeft() : right.getNextTuple();
+  }
+
+  /**
+   * @return The next tuple of the probe side of the current pass
+   */
+  private Tuple nextProbe() throws IOException {
+    if (probeReader != null) {
+      return probeReader.readNextTuple();
+    }
+    return buildLeft ? right.getNextTuple() : nextLeft();
+  }
+
+  /**
+   * Reads the build side of the current pass, spilling the largest partitions
+   * held in memory while there are more tuples than the budget, and puts the
+   * rest into the hash table.
+   */
+  private void build() throws IOException {
+    spilled = new boolean[fanout];
+    buildFiles = new File[fanout];
+    probeFiles = new File[fanout];
+    buildWriters = new TupleWriter[fanout];
+    probeWriters = new TupleWriter[fanout];
+    probeCounts = new int[fanout];
+    ArrayList<ArrayList<Tuple>> parts = new ArrayList<ArrayList<Tuple>>();
+    for (int p = 0; p < fanout; p++) {
+      parts.add(new ArrayList<Tuple>());
+    }
+
+    // The filter is only built while the children are read
+    JoinFilter f = buildReader == null ? newJoinFilter(budget) : null;
+    long keys = 0;
+    int held = 0;
+    Tuple t = nextBuild();
+    while (t != null) {
+      if (f != null) {
+        f.add(t.getColumn(buildKeys[0]));
+        keys++;
+      }
+      int p = partition(key(t, buildKeys));
+      if (spilled[p]) {
+        buildWriters[p].writeTuple(t);
+      } else {
+        parts.get(p).add(t);
+        held++;
+        if (held > budget && level < MAX_LEVEL) {
+          int largest = -1;
+          for (int q = 0; q < fanout; q++) {
+            if (!spilled[q] && (largest == -1 || parts.get(q).size() > parts.get(largest).size())) {
+              largest = q;
+            }
+          }
+          spill(largest, parts.get(largest));
+          held -= parts.get(largest).size();
+          parts.get(largest).clear();
+        }
+      }
+      t = nextBuild();
+    }
+
+    table = new HashMap<Tuple, ArrayList<Tuple>>();
+    for (ArrayList<Tuple> part : parts) {
+      for (Tuple b : part) {
+        Tuple k = key(b, buildKeys);
+        ArrayList<Tuple> list = table.get(k);
+        if (list == null) {
+          list = new ArrayList<Tuple>();
+          table.put(k, list);
+        }
+        list.add(b);
+      }
+    }
+    if (buildReader != null) {
+      buildReader.close();
+      buildFile.delete();
+      buildReader = null;
+    }
+    if (f != null) {
+      f.finish(keys);
+      pushJoinFilter(buildLeft ? leftSchema.size() + probeKeys[0] : probeKeys[0], f);
+    }
+  }
+
+  /**
+   * Moves a partition to new build and probe files, which receive all its
+   * further tuples in this pass.
+   *
+   * @param p      The partition
+   * @param tuples The build tuples of the partition read so far
+   */
+  private void spill(int p, ArrayList<Tuple> tuples) throws IOException {
+    spilled[p] = true;
+    buildFiles[p] = DatabaseCatalog.getInstance().createTempFile("grace");
+    probeFiles[p] = DatabaseCatalog.getInstance().createTempFile("grace");
+    buildWriters[p] = new BinaryTupleWriter(buildFiles[p]);
+    probeWriters[p] = new BinaryTupleWriter(probeFiles[p]);
+    for (Tuple t : tuples) {
+      buildWriters[p].writeTuple(t);
+    }
+  }
+
+  /**
+   * Ends the current pass and starts the pass of the next spilled partition
+   * that has probe tuples.
+   *
+   * @return false if there are no partitions left
+   */
+  private boolean nextPass() throws IOException {
+    if (probeReader != null) {
+      probeReader.close();
+      probeFile.delete();
+      probeReader = null;
+    }
+    for (int p = 0; p < fanout; p++) {
+      if (spilled[p]) {
+        buildWriters[p].close();
+        probeWriters[p].close();
+        if (probeCounts[p] > 0) {
+          pending.push(new Object[] { buildFiles[p], probeFiles[p], level + 1 });
+        } else {
+          buildFiles[p].delete();
+          probeFiles[p].delete();
+        }
+      }
+    }
+    spilled = new boolean[fanout];
+    table = null;
+    if (pending.isEmpty()) {
+      return false;
+    }
+    Object[] next = pending.pop();
+    buildFile = (File) next[0];
+    probeFile = (File) next[1];
+    level = (Integer) next[2];
+    buildReader = new BinaryTupleReader(buildFile);
+    probeReader = new BinaryTupleReader(probeFile);
+    build();
+    return true;
+  }
+
+  /**
+   * @return The next combined tuple whose keys are equal and that satisfies the
+   *         rest of the join condition
+   */
+  public Tuple getNextTuple() {
+    try {
+      if (done) {
+        return null;
+      }
+      if (table == null) {
+        build();
+      }
+      while (true) {
+        while (matches != null && match < matches.size()) {
+          Tuple other = matches.get(match++);
+          Tuple newOne = buildLeft ? other.combine(probe) : probe.combine(other);
+          if (residual == null) {
+            return newOne;
+          }
+          vis.setTuple(newOne);
+          residual.accept(vis);
+          if (vis.getOutcome()) {
+            return newOne;
+          }
+        }
+        matches = null;
+        probe = nextProbe();
+        if (probe == null) {
+          if (!nextPass()) {
+            done = true;
+            return null;
+          }
+          continue;
+        }
+        Tuple k = key(probe, probeKeys);
+        int p = partition(k);
+        if (spilled[p]) {
+          probeWriters[p].writeTuple(probe);
+          probeCounts[p]++;
+        } else {
+          matches = table.get(k);
+          match = 0;
+        }
+      }
+    } catch (IOException e) {
+      System.out.println(e);
+      return null;
+    }
+  }
+
+  /**
+   * Removes the files of the current and pending passes and restarts from the
+   * first tuples of both children.
+   */
+  public void reset() {
+    removeFiles();
+    left.reset();
+    right.reset();
+    leftTuple = nextLeftTuple();
+  }
+
+  /** Removes the files of the current and pending passes and closes both children */
+  public void close() {
+    removeFiles();
+    super.close();
+  }
+
+  /**
+   * Removes the files of the current and pending passes, and forgets the
+   * passes.
+   */
+  private void removeFiles() {
+    try {
+      if (buildReader != null) {
+        buildReader.close();
+        buildFile.delete();
+      }
+      if (probeReader != null) {
+        probeReader.close();
+        probeFile.delete();
+      }
+      for (int p = 0; spilled != null && p < fanout; p++) {
+        if (spilled[p]) {
+          buildWriters[p].close();
+          probeWriters[p].close();
+          buildFiles[p].delete();
+          probeFiles[p].delete();
+        }
+      }
+      for (Object[] part : pending) {
+        ((File) part[0]).delete();
+        ((File) part[1]).delete();
+      }
+    } catch (IOException e) {
+      System.out.println(e);
+    }
+    pending.clear();
+    buildReader = null;
+    probeReader = null;
+    spilled = null;
+    table = null;
+    level = 0;
+    done = false;
+    probe = null;
+    matches = null;
+  }
+}
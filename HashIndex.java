@@ -0,0 +1,402 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * HashIndex is an extendible hash index over an integer column of a binary
+ * table, stored in pages of BinaryTupleWriter.PAGE_SIZE bytes. Like the
+ * BPlusTree it maps every key to the rids of the tuples holding it, but it only
+ * answers equalities, in one read of a directory page and one of a bucket page
+ * whatever the size of the table.
+ * 
+ * Page 0 is a header holding the global depth of the directory, the number of
+ * directory pages, the number of buckets and the number of entries. The
+ * directory follows from page 1, 2^depth bucket addresses indexed by the low
+ * bits of the hash of a key. Every bucket page holds its local depth, the
+ * number of entries, the address of an overflow page or 0, and the entries as
+ * {key, page, tuple} triples. A bucket is split when it overflows, unless all
+ * its keys have the same hash, which only happens for a key with more rids than
+ * fit on a page; such a bucket is continued on overflow pages instead.
+ */
+public class HashIndex implements Index {
+
+  static final int PAGE_INTS = BinaryTupleWriter.PAGE_SIZE / 4;
+  static final int BUCKET_SIZE = (PAGE_INTS - 3) / 3;
+  static final int MAX_DEPTH = 24;
+
+  File file;
+  String path;
+  FileChannel channel;
+  BufferPool pool;
+  boolean pooled;
+  ByteBuffer page = ByteBuffer.allocate(BinaryTupleWriter.PAGE_SIZE);
+  int[] node = new int[PAGE_INTS];
+  int depth;
+  int[] directory = new int[PAGE_INTS];
+  int directoryPage = -1;
+
+  // Position in the bucket holding the key that was looked up
+  long key;
+  int entry;
+  int entries;
+
+  /**
+   * Constructor for the HashIndex class that opens an existing index.
+   * 
+   * @param f The file holding the index
+   * @return a HashIndex instance
+   */
+  public HashIndex(File f) throws IOException {
+    file = f;
+    path = f.getPath();
+    pool = BufferPool.getInstance();
+    pooled = pool.isEnabled();
+    if (!pooled) {
+      channel = new FileInputStream(file).getChannel();
+    }
+    readPage(0, node);
+    depth = node[0];
+  }
+
+  /**
+   * @param key A key of the index
+   * @return The hash of the key, whose low bits choose its bucket
+   */
+  static int hash(int key) {
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Reads a page of the index.
+   * 
+   * @param n    The address of the page
+   * @param dest The array receiving the ints of the page
+   */
+  private void readPage(int n, int[] dest) throws IOException {
+    ByteBuffer p;
+    if (pooled) {
+      p = pool.pin(path, n);
+      if (p == null) {
+        throw new IOException("Page " + n + " is missing from index " + path);
+      }
+    } else {
+      p = page;
+      p.clear();
+      long start = (long) n * BinaryTupleWriter.PAGE_SIZE;
+      while (p.hasRemaining()) {
+        if (channel.read(p, start + p.position()) == -1) {
+          break;
+        }
+      }
+      if (p.position() < BinaryTupleWriter.PAGE_SIZE) {
+        throw new IOException("Page " + n + " is missing from index " + path);
+      }
+      p.flip();
+    }
+    p.asIntBuffer().get(dest);
+    if (pooled) {
+      pool.unpin(path, n);
+    }
+  }
+
+  /**
+   * Reads the bucket of a key. The directory page read last is kept, so
+   * lookups of nearby slots read a single page.
+   * 
+   * @param low  The key to look up
+   * @param high Must equal low, as a hash index cannot return ranges
+   */
+  public void seek(long low, long high) throws IOException {
+    if (low != high) {
+      throw new IOException("Hash index " + path + " only answers equalities");
+    }
+    key = low;
+    entry = 0;
+    entries = 0;
+    if (low < Integer.MIN_VALUE || low > Integer.MAX_VALUE) {
+      return;
+    }
+    int slot = hash((int) low) & ((1 << depth) - 1);
+    if (directoryPage != slot / PAGE_INTS) {
+      directoryPage = slot / PAGE_INTS;
+      readPage(1 + directoryPage, directory);
+    }
+    readPage(directory[slot % PAGE_INTS], node);
+    entries = node[1];
+  }
+
+  /**
+   * @return The next rid of the key given to seek as {key, page, tuple}, or
+   *         null if there are none left
+   */
+  public int[] nextRid() throws IOException {
+    while (true) {
+      while (entry < entries) {
+        int offset = 3 + 3 * entry++;
+        if (node[offset] == key) {
+          return new int[] { node[offset], node[offset + 1], node[offset + 2] };
+        }
+      }
+      if (entries == 0 || node[2] == 0) {
+        entries = 0;
+        return null;
+      }
+      readPage(node[2], node);
+      entry = 0;
+      entries = node[1];
+    }
+  }
+
+  /** Closes the underlying file. */
+  public void close() throws IOException {
+    if (channel != null) {
+      channel.close();
+    }
+  }
+
+  /**
+   * HashedEntries outputs every data entry of its child prefixed with the hash
+   * of its key, with the bits reversed and the sign bit flipped, so that
+   * sorting on it orders the entries by the low bits of the hash first, as the
+   * buckets of the directory are.
+   */
+  static class HashedEntries extends Operator {
+
+    static final ArrayList<String> SCHEMA = new ArrayList<String>(Arrays.asList("hash", "key", "page", "tuple"));
+
+    Operator op;
+
+    /**
+     * @param o The operator returning the {key, page, tuple} triples
+     */
+    HashedEntries(Operator o) {
+      op = o;
+    }
+
+    /**
+     * @return The next triple with its reversed hash in front, or null
+     */
+    Tuple getNextTuple() {
+      Tuple t = op.getNextTuple();
+      if (t == null) {
+        return null;
+      }
+      int h = Integer.reverse(hash(t.getColumn(0))) ^ Integer.MIN_VALUE;
+      return new Tuple(new int[] { h, t.getColumn(0), t.getColumn(1), t.getColumn(2) });
+    }
+
+    /** Reset to the first triple of the child */
+    void reset() {
+      op.reset();
+    }
+
+    /** Closes the child */
+    void close() {
+      op.close();
+    }
+
+    /**
+     * @return The names of the columns of the tuples
+     */
+    ArrayList<String> getSchema() {
+      return SCHEMA;
+    }
+  }
+
+  /**
+   * Layout finds the buckets of an index from its hashes in the order of their
+   * low bits, without holding the entries. The hashes seen so far form a path
+   * of trie nodes, one per depth, each counting the entries whose hashes share
+   * its low bits. When a hash leaves the path below some depth, the nodes below
+   * it are complete: a node becomes a bucket unless it overflows and its
+   * hashes differ, in which case it is split into the buckets of its two
+   * children, as inserting its entries would have split it.
+   */
+  static class Layout {
+    int[] count = new int[MAX_DEPTH + 1];
+    int[] first = new int[MAX_DEPTH + 1];
+    boolean[] uniform = new boolean[MAX_DEPTH + 1];
+    // The buckets of the complete children of every node, as {prefix, local
+    // depth, entries}, and which of its two children have been seen
+    ArrayList<ArrayList<int[]>> found = new ArrayList<ArrayList<int[]>>();
+    int[] seen = new int[MAX_DEPTH + 1];
+    int last;
+    boolean empty = true;
+
+    Layout() {
+      for (int k = 0; k <= MAX_DEPTH; k++) {
+        found.add(new ArrayList<int[]>());
+      }
+    }
+
+    /**
+     * @param h The hash of the next entry
+     */
+    void add(int h) {
+      if (!empty) {
+        int common = Math.min(Integer.numberOfTrailingZeros(last ^ h), MAX_DEPTH);
+        for (int k = MAX_DEPTH; k > common; k--) {
+          complete(k);
+        }
+      }
+      for (int k = 0; k <= MAX_DEPTH; k++) {
+        if (count[k] == 0) {
+          first[k] = h;
+          uniform[k] = true;
+        } else if (first[k] != h) {
+          uniform[k] = false;
+        }
+        count[k]++;
+      }
+      last = h;
+      empty = false;
+    }
+
+    /**
+     * Turns the node of the last hash at a depth into buckets, and hands them
+     * to its parent.
+     * 
+     * @param k The depth of the node
+     * @return The buckets of the node
+     */
+    ArrayList<int[]> complete(int k) {
+      int prefix = last & ((1 << k) - 1);
+      ArrayList<int[]> buckets = found.get(k);
+      if (k < MAX_DEPTH && count[k] > BUCKET_SIZE && !uniform[k]) {
+        if ((seen[k] & 1) == 0) {
+          buckets.add(0, new int[] { prefix, k + 1, 0 });
+        }
+        if ((seen[k] & 2) == 0) {
+          buckets.add(new int[] { prefix | (1 << k), k + 1, 0 });
+        }
+      } else {
+        buckets = new ArrayList<int[]>();
+        buckets.add(new int[] { prefix, k, count[k] });
+      }
+      found.set(k, new ArrayList<int[]>());
+      seen[k] = 0;
+      count[k] = 0;
+      if (k > 0) {
+        found.get(k - 1).addAll(buckets);
+        seen[k - 1] |= 1 << ((prefix >>> (k - 1)) & 1);
+      }
+      return buckets;
+    }
+
+    /**
+     * @return The buckets of the index in the order of their low bits
+     */
+    ArrayList<int[]> finish() {
+      if (empty) {
+        ArrayList<int[]> buckets = new ArrayList<int[]>();
+        buckets.add(new int[] { 0, 0, 0 });
+        return buckets;
+      }
+      for (int k = MAX_DEPTH; k > 0; k--) {
+        complete(k);
+      }
+      return complete(0);
+    }
+  }
+
+  /**
+   * Builds an index in two passes over its data entries sorted externally on
+   * the low bits of the hashes of their keys. The first pass finds the buckets
+   * an extendible hash table would split the entries into, where a bucket is
+   * split while it overflows and its keys have different hashes, and the
+   * second writes the header, the directory and then the buckets in that
+   * order, so only the directory and the list of buckets are held in memory.
+   * 
+   * @param f       The file to be written
+   * @param entries An operator returning the {key, page, tuple} triples of the
+   *                indexed column
+   * @return The number of triples in the index
+   */
+  public static int build(File f, Operator entries) throws IOException {
+    Operator sorted = new SortOperator(SortOperator.getColumns(HashedEntries.SCHEMA, new int[] { 0 }),
+        new HashedEntries(entries));
+    try {
+      Layout layout = new Layout();
+      int total = 0;
+      Tuple t = sorted.getNextTuple();
+      while (t != null) {
+        layout.add(hash(t.getColumn(1)));
+        total++;
+        t = sorted.getNextTuple();
+      }
+      ArrayList<int[]> buckets = layout.finish();
+
+      // Give every bucket its first page after the directory, followed by the
+      // overflow pages, and point the directory slots ending in its bits to it
+      int depth = 0;
+      for (int[] b : buckets) {
+        depth = Math.max(depth, b[1]);
+      }
+      int[] directory = new int[1 << depth];
+      int directoryPages = (directory.length + PAGE_INTS - 1) / PAGE_INTS;
+      int next = 1 + directoryPages;
+      for (int[] b : buckets) {
+        for (int i = b[0]; i < directory.length; i += 1 << b[1]) {
+          directory[i] = next;
+        }
+        next += Math.max(1, (b[2] + BUCKET_SIZE - 1) / BUCKET_SIZE);
+      }
+
+      FileChannel out = new FileOutputStream(f).getChannel();
+      ByteBuffer buffer = ByteBuffer.allocate(BinaryTupleWriter.PAGE_SIZE);
+      int[] p = new int[PAGE_INTS];
+      p[0] = depth;
+      p[1] = directoryPages;
+      p[2] = buckets.size();
+      p[3] = total;
+      writePage(out, buffer, p);
+      for (int d = 0; d < directoryPages; d++) {
+        p = new int[PAGE_INTS];
+        int length = Math.min(PAGE_INTS, directory.length - d * PAGE_INTS);
+        System.arraycopy(directory, d * PAGE_INTS, p, 0, length);
+        writePage(out, buffer, p);
+      }
+      sorted.reset();
+      int address = 1 + directoryPages;
+      for (int[] b : buckets) {
+        int start = 0;
+        do {
+          int count = Math.min(BUCKET_SIZE, b[2] - start);
+          p = new int[PAGE_INTS];
+          p[0] = b[1];
+          p[1] = count;
+          p[2] = start + count < b[2] ? address + 1 : 0;
+          for (int i = 0; i < count; i++) {
+            t = sorted.getNextTuple();
+            p[3 + 3 * i] = t.getColumn(1);
+            p[4 + 3 * i] = t.getColumn(2);
+            p[5 + 3 * i] = t.getColumn(3);
+          }
+          writePage(out, buffer, p);
+          start += count;
+          address++;
+        } while (start < b[2]);
+      }
+      out.close();
+      return total;
+    } finally {
+      sorted.close();
+    }
+  }
+
+  /**
+   * Writes one page of ints to the end of a file.
+   */
+  private static void writePage(FileChannel out, ByteBuffer buffer, int[] p) throws IOException {
+    buffer.clear();
+    buffer.asIntBuffer().put(p);
+    while (buffer.hasRemaining()) {
+      out.write(buffer);
+    }
+  }
+}
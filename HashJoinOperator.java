@@ -0,0 +1,144 @@
+import java.util.*;
+import net.sf.jsqlparser.expression.*;
+
+/**
+ * HashJoinOperator joins its children on the columns that the equalities of
+ * the join condition equate between them. It reads one child, the build side,
+ * into a hash table on its join key, then reads the other child, the probe
+ * side, once and looks up the key of every probe tuple. Only the conjuncts that
+ * are not key equalities are evaluated, and only on the pairs with equal keys.
+ * 
+ * The table is built when the first tuple is asked for, so the left tuples can
+ * still be filtered by a Bloom filter set after construction. Once it is built,
+ * a JoinFilter of the first key column is pushed down to the probe side. The
+ * output tuples are always the left tuple followed by the right tuple.
+ */
+public class HashJoinOperator extends JoinOperator {
+
+  boolean buildLeft;
+  int[] leftKeys;
+  int[] rightKeys;
+  Expression residual;
+  HashMap<Tuple, ArrayList<Tuple>> table;
+
+  // The probe tuple and the build tuples with the same key
+  Tuple probe;
+  ArrayList<Tuple> matches;
+  int match;
+
+  /**
+   * Constructor for the HashJoinOperator class.
+   * 
+   * @param l The left child operator
+   * @param r The right child operator
+   * @param e The join condition, with at least one equality of a left and a
+   *          right column
+   * @param b true to build the hash table on the left child, false to build it
+   *          on the right child
+   * @return a HashJoinOperator instance
+   */
+  public HashJoinOperator(Operator l, Operator r, Expression e, boolean b) {
+    super(l, r, e);
+    buildLeft = b;
+    int[][] keys = getJoinKeys();
+    leftKeys = keys[0];
+    rightKeys = keys[1];
+    residual = getResidual();
+  }
+
+  /**
+   * Both children are read once, so the right child is never materialized.
+   */
+  void prepareInner() {
+  }
+
+  /**
+   * Reads the build side into the hash table.
+   */
+  private void build() {
+    table = new HashMap<Tuple, ArrayList<Tuple>>();
+    Tuple t = buildLeft ? leftTuple : right.getNextTuple();
+    while (t != null) {
+      Tuple k = key(t, buildLeft ? leftKeys : rightKeys);
+      ArrayList<Tuple> list = table.get(k);
+      if (list == null) {
+        list = new ArrayList<Tuple>();
+        table.put(k, list);
+      }
+      list.add(t);
+      t = buildLeft ? nextLeftTuple() : right.getNextTuple();
+    }
+    leftTuple = null;
+
+    JoinFilter f = newJoinFilter(table.size());
+    if (f != null) {
+      for (Tuple k : table.keySet()) {
+        f.add(k.getColumn(0));
+      }
+      f.finish(table.size());
+      pushJoinFilter(buildLeft ? leftSchema.size() + rightKeys[0] : leftKeys[0], f);
+    }
+  }
+
+  /**
+   * @return The next tuple of the probe side, or null if there are none left
+   */
+  private Tuple nextProbe() {
+    if (buildLeft) {
+      return right.getNextTuple();
+    }
+    if (probe == null && leftTuple != null) {
+      // The first left tuple was read when the join was created
+      Tuple t = leftTuple;
+      leftTuple = null;
+      return t;
+    }
+    return nextLeftTuple();
+  }
+
+  /**
+   * @return The next combined tuple whose keys are equal and that satisfies the
+   *         rest of the join condition
+   */
+  public Tuple getNextTuple() {
+    if (table == null) {
+      Tuple first = buildLeft ? null : leftTuple;
+      build();
+      leftTuple = first;
+      probe = null;
+    }
+    while (true) {
+      while (matches != null && match < matches.size()) {
+        Tuple other = matches.get(match++);
+        Tuple newOne = buildLeft ? other.combine(probe) : probe.combine(other);
+        if (residual == null) {
+          return newOne;
+        }
+        vis.setTuple(newOne);
+        residual.accept(vis);
+        if (vis.getOutcome()) {
+          return newOne;
+        }
+      }
+      probe = nextProbe();
+      if (probe == null) {
+        matches = null;
+        return null;
+      }
+      matches = table.get(key(probe, buildLeft ? rightKeys : leftKeys));
+      match = 0;
+    }
+  }
+
+  /** Restarts the probe side; the hash table is kept */
+  public void reset() {
+    if (buildLeft) {
+      right.reset();
+    } else {
+      left.reset();
+      leftTuple = nextLeftTuple();
+    }
+    probe = null;
+    matches = null;
+  }
+}
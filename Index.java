@@ -0,0 +1,26 @@
+import java.io.IOException;
+
+/**
+ * Index is the interface of the on-disk indexes over an integer column of a
+ * binary table. An index is positioned on the keys in a range with seek, after
+ * which nextRid returns the record ids of the matching tuples one by one.
+ */
+public interface Index {
+
+  /**
+   * Positions the index on the first rid whose key lies in [low, high].
+   * 
+   * @param low  The smallest key of interest
+   * @param high The largest key of interest
+   */
+  void seek(long low, long high) throws IOException;
+
+  /**
+   * @return The next rid in the range given to seek as {key, page, tuple}, or
+   *         null if there are none left
+   */
+  int[] nextRid() throws IOException;
+
+  /** Closes the underlying file. */
+  void close() throws IOException;
+}
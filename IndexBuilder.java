@@ -0,0 +1,232 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * IndexBuilder builds the B+ trees and hash indexes declared in index_info.txt. Indexes refer to
+ * tuples by their page and position in the binary format, so tables that are
+ * not yet stored as binary are converted first. For a clustered index the
+ * binary file is rewritten sorted on the indexed column before the tree is
+ * bulk-loaded, so the indexes of a table should be rebuilt whenever it is
+ * converted again. The table and the data entries are sorted by SortOperator,
+ * so neither is held in memory whole.
+ * 
+ * Usage: java IndexBuilder inputdir [table ...]
+ * 
+ * If no tables are given the indexes of every table are built.
+ */
+public class IndexBuilder {
+
+  /**
+   * @param args The input directory followed by the tables whose indexes are
+   *             built
+   */
+  public static void main(String[] args) {
+    DatabaseCatalog catalog = DatabaseCatalog.getInstance();
+    catalog.fillCatalogHash(args[0]);
+
+    HashSet<String> tables = new HashSet<String>(Arrays.asList(args).subList(1, args.length));
+    new File(catalog.getDbPath() + File.separator + "indexes").mkdirs();
+
+    // Build the clustered indexes first, since sorting a table moves its tuples
+    ArrayList<IndexInfo> indexes = new ArrayList<IndexInfo>();
+    for (IndexInfo index : catalog.getIndexes()) {
+      if (tables.isEmpty() || tables.contains(index.getTable())) {
+        indexes.add(index.isClustered() ? 0 : indexes.size(), index);
+      }
+    }
+    for (IndexInfo index : indexes) {
+      try {
+        int rows = build(index);
+        System.out.println("Built index " + index + " (" + rows + " entries)");
+      } catch (IOException e) {
+        System.out.println(e);
+      }
+    }
+  }
+
+  /**
+   * Builds one index, converting and sorting its table first when needed.
+   * 
+   * @param index The index to be built
+   * @return The number of data entries in the index
+   */
+  public static int build(IndexInfo index) throws IOException {
+    DatabaseCatalog catalog = DatabaseCatalog.getInstance();
+    String tbName = index.getTable();
+    if (!catalog.getFormat(tbName).equals("binary")) {
+      TableConverter.convert(tbName, "binary");
+    }
+    ArrayList<String> schema = catalog.getSchema(tbName);
+    int key = schema.indexOf(index.getColumn());
+    if (key == -1) {
+      throw new IOException("Table " + tbName + " has no column " + index.getColumn());
+    }
+    File file = new File(catalog.getTbPath(tbName));
+    if (index.isClustered()) {
+      sortTable(file, schema, key);
+    }
+
+    // The entries of a clustered table come sorted on the key and the rid, as
+    // its rows are read in order; the others are sorted externally, and a hash
+    // index sorts them its own way
+    Operator entries = new EntryOperator(file, schema.size(), key);
+    if (!index.isClustered() && !index.isHash()) {
+      entries = new SortOperator(SortOperator.getColumns(entries.getSchema(), new int[] { 0 }), entries);
+    }
+    try {
+      if (index.isHash()) {
+        return HashIndex.build(index.getFile(), entries);
+      }
+      return BPlusTree.bulkLoad(index.getFile(), entries, index.getOrder());
+    } finally {
+      entries.close();
+    }
+  }
+
+  /**
+   * Rewrites a binary table sorted on one column, then on the other columns in
+   * order, with an external SortOperator. The sorted table is written to a
+   * temporary file next to the table, which then replaces it, so the table is
+   * never left half written.
+   * 
+   * @param file   The binary file of the table
+   * @param schema The columns of the table
+   * @param key    The position of the column to sort on
+   */
+  static void sortTable(File file, ArrayList<String> schema, int key) throws IOException {
+    Operator sort = new SortOperator(SortOperator.getColumns(schema, new int[] { key }),
+        new TableOperator(file, schema));
+    File sorted = File.createTempFile(file.getName(), ".sorting", file.getAbsoluteFile().getParentFile());
+    try {
+      BinaryTupleWriter writer = new BinaryTupleWriter(sorted, true);
+      Tuple t = sort.getNextTuple();
+      while (t != null) {
+        writer.writeTuple(t);
+        t = sort.getNextTuple();
+      }
+      writer.close();
+      replace(sorted, file);
+    } finally {
+      sort.close();
+      sorted.delete();
+      ZoneMap.getZoneFile(sorted.getPath()).delete();
+    }
+  }
+
+  /**
+   * Moves a newly written binary file and its zone map over a table. The old
+   * zone map is removed first, so a crash in between leaves a table without a
+   * zone map rather than one that does not match it.
+   * 
+   * @param from The new binary file
+   * @param to   The binary file of the table
+   */
+  static void replace(File from, File to) throws IOException {
+    File zones = ZoneMap.getZoneFile(to.getPath());
+    Files.deleteIfExists(zones.toPath());
+    Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    Files.move(ZoneMap.getZoneFile(from.getPath()).toPath(), zones.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * TableOperator outputs the tuples of a binary file, so that they can be
+   * sorted by a SortOperator.
+   */
+  static class TableOperator extends Operator {
+
+    BinaryTupleReader reader;
+    ArrayList<String> schema;
+
+    /**
+     * @param f      The binary file to be read
+     * @param schema The names of its columns
+     */
+    TableOperator(File f, ArrayList<String> schema) throws IOException {
+      reader = new BinaryTupleReader(f);
+      this.schema = schema;
+    }
+
+    /**
+     * @return The next tuple of the file, or null at its end
+     */
+    Tuple getNextTuple() {
+      try {
+        return reader.readNextTuple();
+      } catch (IOException e) {
+        System.out.println(e);
+        return null;
+      }
+    }
+
+    /** Reset to the first tuple of the file */
+    void reset() {
+      try {
+        reader.reset();
+      } catch (IOException e) {
+        System.out.println(e);
+      }
+    }
+
+    /** Closes the file */
+    void close() {
+      try {
+        reader.close();
+      } catch (IOException e) {
+        System.out.println(e);
+      }
+    }
+
+    /**
+     * @return The names of the columns of the tuples
+     */
+    ArrayList<String> getSchema() {
+      return schema;
+    }
+  }
+
+  /**
+   * EntryOperator outputs the data entry of every tuple of a binary table as a
+   * {key, page, tuple} triple, in the order of the table. Every page but the
+   * last is full, so the rid of a tuple follows from its row number.
+   */
+  static class EntryOperator extends TableOperator {
+
+    int key;
+    int capacity;
+    int row;
+
+    /**
+     * @param f     The binary file of the table
+     * @param arity The number of columns of the table
+     * @param key   The position of the indexed column
+     */
+    EntryOperator(File f, int arity, int key) throws IOException {
+      super(f, new ArrayList<String>(Arrays.asList("key", "page", "tuple")));
+      this.key = key;
+      capacity = BinaryTupleReader.getCapacity(arity);
+    }
+
+    /**
+     * @return The data entry of the next tuple, or null at the end of the table
+     */
+    Tuple getNextTuple() {
+      Tuple t = super.getNextTuple();
+      if (t == null) {
+        return null;
+      }
+      Tuple entry = new Tuple(new int[] { t.getColumn(key), row / capacity, row % capacity });
+      row++;
+      return entry;
+    }
+
+    /** Reset to the first tuple of the table */
+    void reset() {
+      super.reset();
+      row = 0;
+    }
+  }
+}
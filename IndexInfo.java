@@ -0,0 +1,118 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * IndexInfo describes one index declared in index_info.txt next to schema.txt.
+ * Every line of the file declares an index on an integer column as
+ * "table column clustered order [hash]", for example "Boats E 1 10" for a
+ * clustered B+ tree of order 10 on Boats.E, or "Reserves G 0 0 hash" for an
+ * unclustered hash index on Reserves.G, which has no order. A clustered index
+ * keeps the table sorted on its column, so at most one index per table can be
+ * clustered. A B+ tree is kept in db/indexes/table.column, a hash index in
+ * db/indexes/table.column.hash.
+ */
+public class IndexInfo {
+
+  String table;
+  String column;
+  boolean clustered;
+  int order;
+  boolean hash;
+  File file;
+
+  /**
+   * Constructor for the IndexInfo class.
+   * 
+   * @param tb  The table of the index
+   * @param col The indexed column
+   * @param c   true if the table is sorted on the column
+   * @param d   The order of the tree
+   * @param h   true for a hash index, false for a B+ tree
+   * @param f   The file holding the index
+   * @return an IndexInfo instance
+   */
+  public IndexInfo(String tb, String col, boolean c, int d, boolean h, File f) {
+    table = tb;
+    column = col;
+    clustered = c;
+    order = d;
+    hash = h;
+    file = f;
+  }
+
+  /** @return The table of the index */
+  public String getTable() {
+    return table;
+  }
+
+  /** @return The indexed column */
+  public String getColumn() {
+    return column;
+  }
+
+  /** @return true if the table is sorted on the indexed column */
+  public boolean isClustered() {
+    return clustered;
+  }
+
+  /** @return The order of the tree */
+  public int getOrder() {
+    return order;
+  }
+
+  /** @return true for a hash index, which only answers equalities */
+  public boolean isHash() {
+    return hash;
+  }
+
+  /** @return The file holding the index */
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Reads the indexes declared in an index_info.txt file.
+   * 
+   * @param file     The file to be read
+   * @param indexDir The directory holding the index files
+   * @return The declared indexes in the order of the file, or an empty list if
+   *         there is no such file
+   */
+  public static ArrayList<IndexInfo> read(File file, File indexDir) throws IOException {
+    ArrayList<IndexInfo> indexes = new ArrayList<IndexInfo>();
+    if (!file.exists()) {
+      return indexes;
+    }
+    BufferedReader reader = new BufferedReader(new FileReader(file));
+    String st;
+    while ((st = reader.readLine()) != null) {
+      String[] fields = st.trim().split("\\s+");
+      if (fields.length < 4) {
+        continue;
+      }
+      boolean hash = fields.length > 4 && fields[4].equals("hash");
+      indexes.add(new IndexInfo(fields[0], fields[1], fields[2].equals("1"), Integer.parseInt(fields[3]), hash,
+          new File(indexDir, fields[0] + "." + fields[1] + (hash ? ".hash" : ""))));
+    }
+    reader.close();
+    return indexes;
+  }
+
+  /**
+   * @return The index opened for lookups
+   */
+  public Index open() throws IOException {
+    if (hash) {
+      return new HashIndex(file);
+    }
+    return new BPlusTree(file);
+  }
+
+  /** @return The index written as in index_info.txt */
+  public String toString() {
+    return table + " " + column + " " + (clustered ? 1 : 0) + " " + order + (hash ? " hash" : "");
+  }
+}
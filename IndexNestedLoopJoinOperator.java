@@ -0,0 +1,130 @@
+import java.util.*;
+import net.sf.jsqlparser.expression.*;
+import net.sf.jsqlparser.schema.*;
+
+/**
+ * IndexNestedLoopJoinOperator joins its left child with a table that has an
+ * index on the column of an equi-join condition. Instead of rescanning the
+ * inner table for every left tuple, it looks up the join key of the left tuple
+ * in the index and only reads the inner tuples holding that key. The inner side
+ * is an IndexScanOperator, possibly under a SelectOperator applying the
+ * conditions on the inner table alone, and the whole join condition is still
+ * checked on every combined tuple.
+ * 
+ * The left tuples are read in batches of a number of pages and sorted on the
+ * join key, so the index is probed in key order, which walks the leaves of a
+ * B+ tree and the pages of a clustered table from left to right, and only once
+ * for all the left tuples of a batch sharing a key.
+ */
+public class IndexNestedLoopJoinOperator extends JoinOperator {
+
+  IndexScanOperator inner;
+  int outerColumn;
+  int batchSize;
+  // The current batch of left tuples sorted on the key, and the group of them
+  // with the key last probed
+  ArrayList<Tuple> batch = new ArrayList<Tuple>();
+  int groupLeft;
+  int groupEnd;
+  // The inner tuples with the key last probed
+  ArrayList<Tuple> matches = new ArrayList<Tuple>();
+  int match;
+
+  /**
+   * Constructor for the IndexNestedLoopJoinOperator class.
+   * 
+   * @param l     The left child operator
+   * @param r     The inner child operator, either s or a SelectOperator over s
+   * @param e     The join condition
+   * @param s     The index scan of the inner table
+   * @param outer The column of the left child that is equal to the indexed
+   *              column of the inner table
+   * @param pages The number of pages of left tuples sorted together
+   * @return an IndexNestedLoopJoinOperator instance
+   */
+  public IndexNestedLoopJoinOperator(Operator l, Operator r, Expression e, IndexScanOperator s, Column outer,
+      int pages) {
+    super(l, r, e);
+    inner = s;
+    outerColumn = newSchema.indexOf(outer.getWholeColumnName());
+    batchSize = Math.max(pages, 1) * BinaryTupleReader.getCapacity(leftSchema.size());
+  }
+
+  /**
+   * The inner side is read through the index, so it is never materialized.
+   */
+  void prepareInner() {
+  }
+
+  /**
+   * Reads the next batch of left tuples and sorts it on the join key.
+   */
+  private void fillBatch() {
+    batch.clear();
+    while (leftTuple != null && batch.size() < batchSize) {
+      batch.add(leftTuple);
+      leftTuple = nextLeftTuple();
+    }
+    Collections.sort(batch, new Comparator<Tuple>() {
+      public int compare(Tuple a, Tuple b) {
+        return Integer.compare(a.getColumn(outerColumn), b.getColumn(outerColumn));
+      }
+    });
+    groupLeft = 0;
+    groupEnd = 0;
+  }
+
+  /**
+   * @return The next combined tuple that satisfies the join condition. The
+   *         index is probed once per distinct join key of a batch.
+   */
+  public Tuple getNextTuple() {
+    while (true) {
+      while (groupLeft < groupEnd) {
+        while (match < matches.size()) {
+          Tuple newOne = batch.get(groupLeft).combine(matches.get(match++));
+          vis.setTuple(newOne);
+          express.accept(vis);
+          if (vis.getOutcome()) {
+            return newOne;
+          }
+        }
+        groupLeft++;
+        match = 0;
+      }
+      if (groupEnd >= batch.size()) {
+        fillBatch();
+        if (batch.isEmpty()) {
+          return null;
+        }
+      }
+
+      // Probe the index with the key of the next group of the batch
+      int key = batch.get(groupEnd).getColumn(outerColumn);
+      groupLeft = groupEnd;
+      while (groupEnd < batch.size() && batch.get(groupEnd).getColumn(outerColumn) == key) {
+        groupEnd++;
+      }
+      matches.clear();
+      match = 0;
+      inner.setRange(key, key);
+      right.reset();
+      Tuple rightTuple = right.getNextTuple();
+      while (rightTuple != null) {
+        matches.add(rightTuple);
+        rightTuple = right.getNextTuple();
+      }
+    }
+  }
+
+  /** Reset to the first tuple in the left child */
+  public void reset() {
+    left.reset();
+    leftTuple = nextLeftTuple();
+    batch.clear();
+    groupLeft = 0;
+    groupEnd = 0;
+    matches.clear();
+    match = 0;
+  }
+}
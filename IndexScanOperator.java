@@ -0,0 +1,131 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * IndexScanOperator returns the tuples of a binary table whose indexed column
+ * lies in a range, found through a B+ tree or hash index instead of reading the
+ * whole table. With a clustered index the table is sorted on the column, so the
+ * index is only used to find the first matching tuple and the following tuples
+ * are read in order until the column leaves the range. With an unclustered
+ * index every matching tuple is fetched by its rid.
+ * 
+ * It extends ScanOperator so that it can take its place under a
+ * SelectOperator, which still checks the rest of the WHERE clause.
+ */
+public class IndexScanOperator extends ScanOperator {
+
+    IndexInfo index;
+    Index lookup;
+    BinaryTupleReader data;
+    int key;
+    long low;
+    long high;
+    boolean started;
+    boolean done;
+
+    /**
+     * Constructor for the IndexScanOperator class.
+     * 
+     * @param tbName  The name of the table (As String) to be scanned
+     * @param aliases The HashMap of alises (as Strings) of the table to be scanned,
+     *                including the name itself as alias
+     * @param w       The BufferedWriter to be used to write the output
+     * @param i       The index on the table to be used
+     * @param l       The smallest value of the indexed column to be returned
+     * @param h       The largest value of the indexed column to be returned
+     * @return an IndexScanOperator instance (this is a constructor)
+     */
+    public IndexScanOperator(String tbName, HashMap<String, String> aliases, BufferedWriter w, IndexInfo i, long l,
+            long h) throws IOException {
+        super(tbName, aliases, w);
+        reader.close();
+        data = new BinaryTupleReader(file);
+        reader = data;
+        index = i;
+        key = schema.indexOf(index.getColumn());
+        low = l;
+        high = h;
+        lookup = index.open();
+    }
+
+    /** @return The index the scan reads through */
+    public IndexInfo getIndex() {
+        return index;
+    }
+
+    /**
+     * The index already narrows the scan down to the matching rows, so the
+     * candidate rows of the zone maps are ignored.
+     */
+    public void setCandidateRows(long[][] ranges) {
+    }
+
+    /**
+     * The rows are fetched by their rids, so join filters are ignored.
+     */
+    public void addJoinFilter(String column, JoinFilter f) {
+    }
+
+    /**
+     * Changes the range of the scan, and restarts it. An index nested loop join
+     * looks up every outer tuple this way.
+     * 
+     * @param l The smallest value of the indexed column to be returned
+     * @param h The largest value of the indexed column to be returned
+     */
+    public void setRange(long l, long h) {
+        low = l;
+        high = h;
+        reset();
+    }
+
+    /**
+     * Restarts the scan at the first tuple in the range.
+     */
+    public void reset() {
+        started = false;
+        done = false;
+    }
+
+    /** Closes the index and the data file. */
+    public void close() {
+        try {
+            lookup.close();
+            data.close();
+        } catch (IOException e) {
+            System.out.println(e);
+        }
+    }
+
+    /**
+     * @return The next tuple whose indexed column lies in the range, or null if
+     *         there are none left
+     */
+    public Tuple getNextTuple() {
+        try {
+            Tuple t = null;
+            if (done) {
+                return null;
+            } else if (!started) {
+                started = true;
+                lookup.seek(low, high);
+                int[] rid = lookup.nextRid();
+                t = rid == null ? null : data.readTuple(rid[1], rid[2]);
+            } else if (index.isClustered()) {
+                t = data.readNextTuple();
+                if (t != null && t.getColumn(key) > high) {
+                    t = null;
+                }
+            } else {
+                int[] rid = lookup.nextRid();
+                t = rid == null ? null : data.readTuple(rid[1], rid[2]);
+            }
+            done = t == null;
+            return t;
+        } catch (IOException e) {
+            System.out.println(e);
+            return null;
+        }
+    }
+}
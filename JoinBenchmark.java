@@ -0,0 +1,81 @@
+import java.io.*;
+import java.util.*;
+import net.sf.jsqlparser.parser.CCJSqlParser;
+import net.sf.jsqlparser.expression.*;
+import net.sf.jsqlparser.statement.select.*;
+
+/**
+ * JoinBenchmark measures how the throughput of ParallelHashJoinOperator scales
+ * with the number of threads. It joins two tables of a database on a condition,
+ * with 1, 2, 4, ... threads up to a maximum, and prints for each number of
+ * threads the best time of a few runs, the output tuples per second and the
+ * speedup over one thread. A run includes scanning both tables.
+ *
+ * Usage: JoinBenchmark inputdir left right "condition" [maxThreads] [runs]
+ * e.g. JoinBenchmark input Big Sailors "Big.W = Sailors.A" 8
+ */
+public class JoinBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 4) {
+      System.out.println("Usage: JoinBenchmark inputdir left right \"condition\" [maxThreads] [runs]");
+      return;
+    }
+    DatabaseCatalog catalog = DatabaseCatalog.getInstance();
+    catalog.fillCatalogHash(args[0]);
+    String left = args[1];
+    String right = args[2];
+    int maxThreads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+    int runs = args.length > 5 ? Integer.parseInt(args[5]) : 3;
+
+    // Parse the condition as the WHERE clause of a query on both tables
+    String query = "SELECT * FROM " + left + ", " + right + " WHERE " + args[3] + ";";
+    Select select = (Select) new CCJSqlParser(new StringReader(query)).Statement();
+    Expression condition = ((PlainSelect) select.getSelectBody()).getWhere();
+    HashMap<String, String> aliases = new HashMap<String, String>();
+    aliases.put(left, left);
+    aliases.put(right, right);
+
+    JoinOperator check = new ParallelHashJoinOperator(new ScanOperator(left, aliases, null),
+        new ScanOperator(right, aliases, null), condition, false, 1);
+    boolean equiJoin = check.getJoinKeys()[0].length > 0;
+    check.close();
+    if (!equiJoin) {
+      System.out.println("The condition does not equate a column of " + left + " with a column of " + right);
+      return;
+    }
+
+    ArrayList<Integer> counts = new ArrayList<Integer>();
+    for (int threads = 1; threads < maxThreads; threads *= 2) {
+      counts.add(threads);
+    }
+    counts.add(maxThreads);
+
+    System.out.println("threads\ttuples\tms\ttuples/s\tspeedup");
+    double base = 0;
+    for (int threads : counts) {
+      long best = Long.MAX_VALUE;
+      long tuples = 0;
+      // One extra run first to warm up the JIT and the file cache
+      for (int run = 0; run <= runs; run++) {
+        long begin = System.nanoTime();
+        Operator join = new ParallelHashJoinOperator(new ScanOperator(left, aliases, null),
+            new ScanOperator(right, aliases, null), condition, false, threads);
+        tuples = 0;
+        while (join.getNextTuple() != null) {
+          tuples++;
+        }
+        long time = System.nanoTime() - begin;
+        join.close();
+        if (run > 0) {
+          best = Math.min(best, time);
+        }
+      }
+      double ms = best / 1e6;
+      if (threads == 1) {
+        base = ms;
+      }
+      System.out.printf("%d\t%d\t%.1f\t%.0f\t%.2f%n", threads, tuples, ms, tuples / (ms / 1000), base / ms);
+    }
+  }
+}
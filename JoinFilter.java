@@ -0,0 +1,71 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JoinFilter is a runtime filter on the join key of a hash join. While the join
+ * reads its build side it adds every key to the filter, which keeps their
+ * smallest and largest value and a BloomFilter of them, and then hands the
+ * filter to the scan of the probe side table holding the key column, whose
+ * reader skips the rows that cannot find a partner before a Tuple is created
+ * for them. If the keys fill the whole range between the smallest and the
+ * largest value, the range alone is exact and the BloomFilter is dropped.
+ *
+ * The number of rows dropped by all join filters is kept for the whole program
+ * so DBMSMain can report it.
+ */
+public class JoinFilter {
+
+  static final AtomicLong dropped = new AtomicLong();
+
+  int min = Integer.MAX_VALUE;
+  int max = Integer.MIN_VALUE;
+  BloomFilter bloom;
+  double fpp;
+
+  /**
+   * Constructor for the JoinFilter class.
+   *
+   * @param n   The largest number of distinct keys expected
+   * @param fpp The wanted false positive probability of the BloomFilter
+   * @return an empty JoinFilter, which rules out every value
+   */
+  public JoinFilter(long n, double fpp) {
+    this.fpp = fpp;
+    bloom = new BloomFilter(BloomFilter.optimalBits(n, fpp), BloomFilter.optimalHashes(fpp));
+  }
+
+  /**
+   * @param v A key of the build side
+   */
+  public void add(int v) {
+    min = Math.min(min, v);
+    max = Math.max(max, v);
+    bloom.add(v);
+  }
+
+  /**
+   * Ends the building of the filter, shrinking the BloomFilter to the number of
+   * distinct keys, or dropping it if the keys fill their range.
+   *
+   * @param distinct The number of distinct keys added
+   */
+  public void finish(long distinct) {
+    if (distinct > 0 && (long) max - min + 1 == distinct) {
+      bloom = null;
+    } else {
+      bloom.fold(BloomFilter.optimalBits(distinct, fpp));
+    }
+  }
+
+  /**
+   * @param v A key of the probe side
+   * @return false if no key of the build side equals v
+   */
+  public boolean mightContain(int v) {
+    return v >= min && v <= max && (bloom == null || bloom.contains(v));
+  }
+
+  /** @return The number of rows dropped by join filters so far */
+  public static long getDropped() {
+    return dropped.get();
+  }
+}
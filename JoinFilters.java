@@ -0,0 +1,67 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * JoinFilters holds the join filters a TupleReader applies to its rows, each
+ * on one column of the row. Filters can be added while a PrefetchTupleReader
+ * reads ahead on another thread, so they are kept in arrays that are replaced
+ * rather than changed, the columns before the filters.
+ */
+public class JoinFilters {
+
+  volatile int[] columns = new int[0];
+  volatile JoinFilter[] filters = new JoinFilter[0];
+
+  /**
+   * @param column The position of the key column in the rows of the reader
+   * @param f      The filter on that column
+   */
+  public void add(int column, JoinFilter f) {
+    int[] c = Arrays.copyOf(columns, columns.length + 1);
+    c[c.length - 1] = column;
+    JoinFilter[] n = Arrays.copyOf(filters, filters.length + 1);
+    n[n.length - 1] = f;
+    columns = c;
+    filters = n;
+  }
+
+  /**
+   * @param values An array holding the row
+   * @param offset The position of the first column of the row in the array
+   * @return false if a filter rules the row out
+   */
+  public boolean accepts(int[] values, int offset) {
+    JoinFilter[] f = filters;
+    if (f.length == 0) {
+      return true;
+    }
+    int[] c = columns;
+    for (int i = 0; i < f.length; i++) {
+      if (!f[i].mightContain(values[offset + c[i]])) {
+        JoinFilter.dropped.incrementAndGet();
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param buffer A buffer holding the row as ints
+   * @param start  The position of the first column of the row in the buffer
+   * @return false if a filter rules the row out
+   */
+  public boolean accepts(ByteBuffer buffer, int start) {
+    JoinFilter[] f = filters;
+    if (f.length == 0) {
+      return true;
+    }
+    int[] c = columns;
+    for (int i = 0; i < f.length; i++) {
+      if (!f[i].mightContain(buffer.getInt(start + 4 * c[i]))) {
+        JoinFilter.dropped.incrementAndGet();
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -2,12 +2,18 @@ import java.util.*;
 import java.io.*;
 import net.sf.jsqlparser.statement.select.*;
 import net.sf.jsqlparser.expression.*;
+import net.sf.jsqlparser.expression.operators.conditional.*;
+import net.sf.jsqlparser.expression.operators.relational.*;
 import net.sf.jsqlparser.schema.*;
 import java.io.BufferedWriter;
 
 /**
  * JoinOperator handles queries that require the joining of tuples. This works
- * for joining two tables as well as self joins.
+ * for joining two tables as well as self joins. If the right table has a Bloom
+ * filter on the column of an equi-join condition, left tuples whose join key
+ * the filter does not contain are dropped before the right side is scanned.
+ * Hash joins also push a JoinFilter built from the keys of their build side
+ * down to the scan of the probe side.
  */
 public class JoinOperator extends Operator {
 
@@ -16,6 +22,8 @@ public class JoinOperator extends Operator {
   Tuple leftTuple;
   ArrayList<String> leftSchema, rightSchema, newSchema = new ArrayList<String>();
   ExpVisitor vis;
+  BloomFilter filter;
+  int probeColumn;
 
   String leftTable = "", rightTable = "";
 
@@ -68,6 +76,178 @@ public class JoinOperator extends Operator {
     }
     join();
     vis.setSchema(newSchema);
+    prepareInner();
+  }
+
+  /**
+   * Buffers the inner side once instead of rescanning it for every left tuple,
+   * if "join_materialize" is on. Joins that do not rescan their inner side
+   * override this.
+   */
+  void prepareInner() {
+    DatabaseCatalog catalog = DatabaseCatalog.getInstance();
+    if ("on".equals(catalog.getSetting("join_materialize", null))) {
+      right = new MaterializeOperator(right, catalog.getIntSetting("join_materialize_pages", 64));
+    }
+  }
+
+  /**
+   * Drops the left tuples whose value in a column is not in a Bloom filter of
+   * the right table, including the current one.
+   * 
+   * @param f     The Bloom filter of the join column of the right table
+   * @param outer The column of the left child that must equal that column
+   */
+  public void setBloomFilter(BloomFilter f, Column outer) {
+    probeColumn = newSchema.indexOf(outer.getWholeColumnName());
+    if (probeColumn != -1 && probeColumn < leftSchema.size()) {
+      filter = f;
+      if (leftTuple != null && !filter.mightContain(leftTuple.getColumn(probeColumn))) {
+        leftTuple = nextLeftTuple();
+      }
+    }
+  }
+
+  /**
+   * @return The next tuple of the left child whose join key may be in the
+   *         right table, or null if there are none left
+   */
+  Tuple nextLeftTuple() {
+    Tuple t = left.getNextTuple();
+    if (filter != null) {
+      while (t != null && !filter.mightContain(t.getColumn(probeColumn))) {
+        t = left.getNextTuple();
+      }
+    }
+    return t;
+  }
+
+  /**
+   * @param n The largest number of distinct keys expected
+   * @return A new JoinFilter with the false positive probability set by
+   *         "bloom_fpp", or null if "join_filters" is off
+   */
+  static JoinFilter newJoinFilter(long n) {
+    DatabaseCatalog catalog = DatabaseCatalog.getInstance();
+    if ("off".equals(catalog.getSetting("join_filters", null))) {
+      return null;
+    }
+    String fpp = catalog.getSetting("bloom_fpp", null);
+    return new JoinFilter(n, fpp == null ? BloomFilter.DEFAULT_FPP : Double.parseDouble(fpp));
+  }
+
+  /**
+   * Pushes a finished JoinFilter on a column of the joined tuples down to the
+   * scan of the table the column comes from.
+   * 
+   * @param column The position of the column in the joined tuples
+   * @param f      The filter
+   */
+  void pushJoinFilter(int column, JoinFilter f) {
+    pushJoinFilter(column < leftSchema.size() ? left : right, newSchema.get(column), f);
+  }
+
+  /**
+   * Looks for the scan of the table a column comes from under an operator,
+   * going through SelectOperators and joins, and gives it a filter on the
+   * column. Every join is an inner join, so a row whose value the filter rules
+   * out cannot be part of an output tuple, however deep its scan is.
+   * 
+   * @param op     The operator
+   * @param column The whole name of the column, e.g. Sailors.A
+   * @param f      The filter
+   */
+  static void pushJoinFilter(Operator op, String column, JoinFilter f) {
+    if (op instanceof SelectOperator) {
+      op = ((SelectOperator) op).scanner;
+    }
+    if (op instanceof ScanOperator) {
+      String prefix = ((ScanOperator) op).getTableName() + ".";
+      if (column.startsWith(prefix)) {
+        ((ScanOperator) op).addJoinFilter(column.substring(prefix.length()), f);
+      }
+    } else if (op instanceof JoinOperator) {
+      pushJoinFilter(((JoinOperator) op).left, column, f);
+      pushJoinFilter(((JoinOperator) op).right, column, f);
+    }
+  }
+
+  /**
+   * @return The positions of the columns that conjuncts of the join condition
+   *         equate, as {positions in the left tuples, positions in the right
+   *         tuples}
+   */
+  int[][] getJoinKeys() {
+    ArrayList<Integer> leftKeys = new ArrayList<Integer>();
+    ArrayList<Integer> rightKeys = new ArrayList<Integer>();
+    for (Expression conjunct : WhereVisitor.getConjuncts(express)) {
+      int[] key = getJoinKey(conjunct);
+      if (key != null) {
+        leftKeys.add(key[0]);
+        rightKeys.add(key[1]);
+      }
+    }
+    int[][] keys = new int[2][leftKeys.size()];
+    for (int i = 0; i < leftKeys.size(); i++) {
+      keys[0][i] = leftKeys.get(i);
+      keys[1][i] = rightKeys.get(i);
+    }
+    return keys;
+  }
+
+  /**
+   * @param conjunct A conjunct of the join condition
+   * @return The positions in the left and right tuples of the columns the
+   *         conjunct equates, or null if it is not an equality of a left and a
+   *         right column
+   */
+  int[] getJoinKey(Expression conjunct) {
+    if (!(conjunct instanceof EqualsTo)) {
+      return null;
+    }
+    EqualsTo eq = (EqualsTo) conjunct;
+    if (!(eq.getLeftExpression() instanceof Column) || !(eq.getRightExpression() instanceof Column)) {
+      return null;
+    }
+    int a = newSchema.indexOf(((Column) eq.getLeftExpression()).getWholeColumnName());
+    int b = newSchema.indexOf(((Column) eq.getRightExpression()).getWholeColumnName());
+    if (a > b) {
+      int c = a;
+      a = b;
+      b = c;
+    }
+    if (a == -1 || a >= leftSchema.size() || b < leftSchema.size()) {
+      return null;
+    }
+    return new int[] { a, b - leftSchema.size() };
+  }
+
+  /**
+   * @return The conjuncts of the join condition that are not equalities of a
+   *         left and a right column, combined with AND, or null if there are
+   *         none
+   */
+  Expression getResidual() {
+    Expression residual = null;
+    for (Expression conjunct : WhereVisitor.getConjuncts(express)) {
+      if (getJoinKey(conjunct) == null) {
+        residual = residual == null ? conjunct : new AndExpression(residual, conjunct);
+      }
+    }
+    return residual;
+  }
+
+  /**
+   * @param t    A tuple
+   * @param keys The positions of the key columns in the tuple
+   * @return The key of the tuple
+   */
+  static Tuple key(Tuple t, int[] keys) {
+    int[] values = new int[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      values[i] = t.getColumn(keys[i]);
+    }
+    return new Tuple(values);
   }
 
   /**
@@ -94,7 +274,7 @@ public class JoinOperator extends Operator {
   public Tuple getNextTuple() {
     Tuple rightTuple = right.getNextTuple();
     if (rightTuple == null) {
-      leftTuple = left.getNextTuple();
+      leftTuple = nextLeftTuple();
       right.reset();
       rightTuple = right.getNextTuple();
     }
@@ -104,6 +284,10 @@ public class JoinOperator extends Operator {
         Tuple newOne = new Tuple();
         newOne = leftTuple.combine(rightTuple);
 
+        // Without a join condition every pair is part of the cross product
+        if (express == null) {
+          return newOne;
+        }
         vis.setTuple(newOne);
         express.accept(vis);
         if (vis.getOutcome()) {
@@ -112,7 +296,7 @@ public class JoinOperator extends Operator {
           rightTuple = right.getNextTuple();
         }
       }
-      leftTuple = left.getNextTuple();
+      leftTuple = nextLeftTuple();
       right.reset();
       rightTuple = right.getNextTuple();
     }
@@ -122,10 +306,16 @@ public class JoinOperator extends Operator {
   /** Reset to the first tuples in the right and left table */
   public void reset() {
     left.reset();
-    leftTuple = left.getNextTuple();
+    leftTuple = nextLeftTuple();
     right.reset();
   }
 
+  /** Closes both children */
+  public void close() {
+    left.close();
+    right.close();
+  }
+
   /**
    * @return an ArrayList<String>, each of which are the names of the Columns,
    *         ordered to show their place in a row of the table. The schema is from
@@ -0,0 +1,110 @@
+import java.util.*;
+import java.io.*;
+
+/**
+ * LimitOperator handles queries with a LIMIT clause. It skips the tuples
+ * before the offset and then outputs at most the limit of tuples, after which
+ * it stops asking its child for more and closes it, so nothing below it reads
+ * further than needed or keeps its files and threads.
+ */
+public class LimitOperator extends Operator {
+
+  Operator op;
+  long limit;
+  long offset;
+  // The number of tuples taken from the child so far
+  long taken;
+  // Whether the child ran out of tuples
+  boolean exhausted;
+  boolean closed;
+
+  /**
+   * Constructor for the LimitOperator class.
+   *
+   * @param o      The child operator of LimitOperator
+   * @param limit  The largest number of tuples to be output, Long.MAX_VALUE
+   *               for no limit
+   * @param offset The number of tuples to be skipped first
+   * @return a LimitOperator instance
+   */
+  public LimitOperator(Operator o, long limit, long offset) {
+    op = o;
+    this.limit = limit;
+    this.offset = offset;
+  }
+
+  /**
+   * @return The next tuple of the child, or null once the limit is reached
+   */
+  public Tuple getNextTuple() {
+    if (closed || exhausted) {
+      return null;
+    }
+    while (taken < offset) {
+      if (op.getNextTuple() == null) {
+        exhausted = true;
+        return null;
+      }
+      taken++;
+    }
+    if (taken - offset >= limit) {
+      close();
+      return null;
+    }
+    Tuple t = op.getNextTuple();
+    if (t == null) {
+      exhausted = true;
+      return null;
+    }
+    taken++;
+    return t;
+  }
+
+  /** Closes the child, once */
+  public void close() {
+    if (!closed) {
+      closed = true;
+      op.close();
+    }
+  }
+
+  /** Reset to the first tuple by resetting the child, unless it is closed */
+  public void reset() {
+    if (!closed) {
+      op.reset();
+      taken = 0;
+      exhausted = false;
+    }
+  }
+
+  /**
+   * @return The BufferedWriter used by the LimitOperator.
+   */
+  public BufferedWriter getWriter() {
+    return op.getWriter();
+  }
+
+  /**
+   * @return An ArrayList<String>, each of which are the names of the Columns,
+   *         ordered to show their place in a row of the table.
+   */
+  public ArrayList<String> getSchema() {
+    return op.getSchema();
+  }
+
+  /** Gets the next tuple and writes it to the file until there are none left */
+  public void dump() {
+    Tuple t = getNextTuple();
+    while (t != null) {
+      try {
+        BufferedWriter writer = op.getWriter();
+        String out = t.toString();
+        writer.write(out, 0, out.length());
+        writer.newLine();
+      } catch (IOException e) {
+        System.out.println(e);
+      }
+      t = getNextTuple();
+    }
+  }
+}
@@ -0,0 +1,210 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * MappedTupleReader reads a table by mapping its data file into memory with
+ * FileChannel.map and decoding tuples straight from the MappedByteBuffer,
+ * which avoids copying the file through heap buffers. It understands both the
+ * text and the binary page format. Files larger than the window size are
+ * mapped one window at a time. Resetting a reader whose file fits in a single
+ * window only rewinds the buffer position, so repeated scans of the inner
+ * table of a join never reopen the file.
+ */
+public class MappedTupleReader implements TupleReader {
+
+  public static final long DEFAULT_WINDOW_SIZE = 64L * 1024 * 1024;
+
+  RandomAccessFile file;
+  FileChannel channel;
+  MappedByteBuffer buffer;
+  long fileSize;
+  long windowSize;
+  long windowStart;
+  boolean binary;
+
+  // Position of the current page inside the window, -1 before the first page
+  int pageOffset;
+  int arity;
+  int count;
+  int next;
+
+  // Decodes the lines of a text file
+  CsvIntDecoder decoder;
+  JoinFilters joinFilters = new JoinFilters();
+
+  /**
+   * Constructor for the MappedTupleReader class.
+   * 
+   * @param f          The data file to be read
+   * @param isBinary   true if the file is in the binary page format, false if
+   *                   it is in the text format
+   * @param windowSize The largest number of bytes mapped at a time, rounded down
+   *                   to a multiple of the page size
+   * @return a MappedTupleReader instance
+   */
+  public MappedTupleReader(File f, boolean isBinary, long windowSize) throws IOException {
+    file = new RandomAccessFile(f, "r");
+    channel = file.getChannel();
+    fileSize = channel.size();
+    binary = isBinary;
+    decoder = new CsvIntDecoder(f.getPath());
+    this.windowSize = Math.max(BinaryTupleWriter.PAGE_SIZE,
+        windowSize - windowSize % BinaryTupleWriter.PAGE_SIZE);
+    map(0);
+  }
+
+  /**
+   * Maps the window of the file starting at the given offset.
+   * 
+   * @param start The file offset of the first byte of the window
+   */
+  private void map(long start) throws IOException {
+    windowStart = start;
+    long length = Math.min(windowSize, fileSize - start);
+    buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+    pageOffset = -1;
+    count = 0;
+    next = 0;
+  }
+
+  /**
+   * @return The next tuple in the file, or null at the end of the file
+   */
+  public Tuple readNextTuple() throws IOException {
+    if (binary) {
+      return readBinaryTuple();
+    }
+    return readTextTuple();
+  }
+
+  /**
+   * Moves to the next page of the binary file, mapping the next window when the
+   * current one is used up.
+   * 
+   * @return false if there are no pages left
+   */
+  private boolean nextPage() throws IOException {
+    int start = pageOffset < 0 ? 0 : pageOffset + BinaryTupleWriter.PAGE_SIZE;
+    if (start + BinaryTupleWriter.HEADER_SIZE > buffer.limit()) {
+      long nextWindow = windowStart + start;
+      if (nextWindow + BinaryTupleWriter.HEADER_SIZE > fileSize) {
+        return false;
+      }
+      map(nextWindow);
+      start = 0;
+    }
+    pageOffset = start;
+    arity = buffer.getInt(start);
+    count = buffer.getInt(start + 4);
+    next = 0;
+    buffer.position(start + BinaryTupleWriter.HEADER_SIZE);
+    return true;
+  }
+
+  /**
+   * @return The next tuple decoded from the current page of a binary file
+   */
+  private Tuple readBinaryTuple() throws IOException {
+    while (true) {
+      while (next >= count) {
+        if (!nextPage()) {
+          return null;
+        }
+      }
+      if (joinFilters.accepts(buffer, buffer.position())) {
+        break;
+      }
+      buffer.position(buffer.position() + 4 * arity);
+      next++;
+    }
+    int[] values = new int[arity];
+    for (int i = 0; i < arity; i++) {
+      values[i] = buffer.getInt();
+    }
+    next++;
+    return new Tuple(values);
+  }
+
+  /**
+   * Parses the next non-empty line of a text file. A line that runs past the end
+   * of the window is read again from a window that starts at the line, and
+   * windows are made twice as large while a line is longer than a window.
+   * 
+   * @return The next tuple of the text file
+   */
+  private Tuple readTextTuple() throws IOException {
+    while (true) {
+      int lineStart = buffer.position();
+      int end = lineStart;
+      int limit = buffer.limit();
+      while (end < limit && buffer.get(end) != '\n') {
+        end++;
+      }
+      boolean lastWindow = windowStart + limit >= fileSize;
+      if (end == limit && !lastWindow) {
+        if (lineStart == 0) {
+          // The line does not fit in a whole window, so the windows are doubled
+          if (windowSize > Integer.MAX_VALUE / 2) {
+            throw new IOException("A line at byte " + windowStart + " is longer than a mapped window can be");
+          }
+          windowSize *= 2;
+        }
+        map(windowStart + lineStart);
+        continue;
+      }
+      if (lineStart == limit) {
+        return null;
+      }
+      buffer.position(end == limit ? end : end + 1);
+      int columns = decoder.decodeLine(buffer, lineStart, end);
+      if (columns > 0 && joinFilters.accepts(decoder.getRow(), 0)) {
+        return new Tuple(Arrays.copyOf(decoder.getRow(), columns));
+      }
+    }
+  }
+
+  /**
+   * Mapped files are read without looking at zone maps, so every row is read.
+   * 
+   * @param ranges The rows of interest, ignored
+   */
+  public void setCandidateRows(long[][] ranges) throws IOException {
+    reset();
+  }
+
+  /**
+   * Skips the rows the filter rules out from now on.
+   * 
+   * @param column The position of the filtered column
+   * @param f      The filter
+   */
+  public void addJoinFilter(int column, JoinFilter f) {
+    joinFilters.add(column, f);
+  }
+
+  /**
+   * Resets to the first tuple. When the whole file is mapped this only rewinds
+   * the buffer, otherwise the first window is mapped again.
+   */
+  public void reset() throws IOException {
+    decoder.reset();
+    if (windowStart == 0) {
+      buffer.position(0);
+      pageOffset = -1;
+      count = 0;
+      next = 0;
+    } else {
+      map(0);
+    }
+  }
+
+  /** Closes the underlying file. The mapping is released by the garbage collector. */
+  public void close() throws IOException {
+    channel.close();
+    file.close();
+  }
+}
@@ -0,0 +1,176 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * MaterializeOperator buffers the output of its child the first time it is
+ * read and replays the buffered tuples after every reset, so the child is only
+ * evaluated once however often it is rescanned. JoinOperator puts it over its
+ * right child, which is otherwise rescanned and refiltered once per left tuple.
+ * 
+ * Tuples are kept in memory up to a budget of pages. If the child produces more
+ * than that, the tuples are spilled to a temporary file in the binary page
+ * format and every later pass reads that file instead. The file is removed when
+ * the operator is closed.
+ */
+public class MaterializeOperator extends Operator {
+
+  Operator child;
+  ArrayList<String> schema;
+  int budget;
+  ArrayList<Tuple> buffer = new ArrayList<Tuple>();
+  int ind;
+  int consumed;
+  boolean complete;
+  boolean atEnd;
+  File spillFile;
+  TupleWriter spillWriter;
+  TupleReader spillReader;
+
+  /**
+   * Constructor for the MaterializeOperator class.
+   * 
+   * @param o     The child operator whose output is buffered
+   * @param pages The number of pages of tuples that may be held in memory
+   * @return a MaterializeOperator instance
+   */
+  public MaterializeOperator(Operator o, int pages) {
+    child = o;
+    schema = child.getSchema();
+    int perPage = (BinaryTupleWriter.PAGE_SIZE - BinaryTupleWriter.HEADER_SIZE) / (4 * Math.max(schema.size(), 1));
+    budget = Math.max(pages, 1) * perPage;
+  }
+
+  /**
+   * @return The next tuple of the child, read from the child during the first
+   *         pass and from the buffer or the spill file afterwards
+   */
+  public Tuple getNextTuple() {
+    try {
+      if (complete) {
+        if (atEnd) {
+          return null;
+        }
+        if (spillReader != null) {
+          return spillReader.readNextTuple();
+        }
+        if (ind < buffer.size()) {
+          return buffer.get(ind++);
+        }
+        return null;
+      }
+      Tuple t = child.getNextTuple();
+      if (t == null) {
+        finish();
+        return null;
+      }
+      consumed++;
+      if (spillWriter != null) {
+        spillWriter.writeTuple(t);
+      } else {
+        buffer.add(t);
+        if (buffer.size() > budget) {
+          spill();
+        }
+      }
+      return t;
+    } catch (IOException e) {
+      System.out.println(e);
+      return null;
+    }
+  }
+
+  /**
+   * Moves the buffered tuples to a new spill file, which receives all further
+   * tuples of the first pass.
+   */
+  private void spill() throws IOException {
+    spillFile = DatabaseCatalog.getInstance().createTempFile("materialize");
+    spillWriter = new BinaryTupleWriter(spillFile);
+    for (Tuple t : buffer) {
+      spillWriter.writeTuple(t);
+    }
+    buffer.clear();
+  }
+
+  /**
+   * Ends the first pass, opening the spill file for reading if there is one.
+   */
+  private void finish() throws IOException {
+    complete = true;
+    atEnd = true;
+    if (spillWriter != null) {
+      spillWriter.close();
+      spillReader = new BinaryTupleReader(spillFile);
+    }
+  }
+
+  /**
+   * Rewinds to the first tuple. A first pass that was not read to the end is
+   * completed first, so the child is never read again.
+   */
+  public void reset() {
+    try {
+      if (!complete && consumed == 0) {
+        child.reset();
+        return;
+      }
+      while (!complete) {
+        getNextTuple();
+      }
+      if (spillReader != null) {
+        spillReader.reset();
+      }
+      ind = 0;
+      atEnd = false;
+    } catch (IOException e) {
+      System.out.println(e);
+    }
+  }
+
+  /** Closes the child and removes the spill file, if there is one */
+  public void close() {
+    child.close();
+    try {
+      if (spillReader != null) {
+        spillReader.close();
+      } else if (spillWriter != null) {
+        spillWriter.close();
+      }
+    } catch (IOException e) {
+      System.out.println(e);
+    }
+    if (spillFile != null) {
+      spillFile.delete();
+    }
+  }
+
+  /**
+   * @return The schema of the child
+   */
+  public ArrayList<String> getSchema() {
+    return schema;
+  }
+
+  /** @return The BufferedWriter used by the child. */
+  public BufferedWriter getWriter() {
+    return child.getWriter();
+  }
+
+  /** Gets the next tuple and writes it to the file until there are none left */
+  public void dump() {
+    Tuple t = getNextTuple();
+    while (t != null) {
+      try {
+        BufferedWriter writer = child.getWriter();
+        String out = t.toString();
+        writer.write(out, 0, out.length());
+        writer.newLine();
+      } catch (IOException e) {
+        System.out.println(e);
+      }
+      t = getNextTuple();
+    }
+  }
+}
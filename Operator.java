@@ -33,6 +33,13 @@ public abstract class Operator {
         return null;
     }
 
+    /**
+     * Releases the files and threads held by the operator and its children.
+     * The operator cannot be read again afterwards.
+     */
+    void close() {
+    }
+
     /**
      * Gets all tuples of interest and writes to output files
      */
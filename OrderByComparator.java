@@ -9,6 +9,7 @@ import net.sf.jsqlparser.expression.*;
 public class OrderByComparator implements Comparator<Tuple> {
   ArrayList<Column> columns;
   ArrayList<String> schema;
+  int[] indices;
 
   /**
    * Constructor for the OrderByComparator class.
@@ -20,25 +21,33 @@ public class OrderByComparator implements Comparator<Tuple> {
   public OrderByComparator(ArrayList<Column> c, ArrayList<String> s) {
     columns = c;
     schema = s;
+    // Resolve the column positions once instead of on every comparison
+    indices = new int[columns.size()];
+    for (int i = 0; i < columns.size(); i++) {
+      String colName = columns.get(i).getColumnName();
+      String wholeColName = columns.get(i).getWholeColumnName();
+      int colIndex = schema.indexOf(colName);
+      if (colIndex == -1)
+        colIndex = schema.indexOf(wholeColName);
+      indices[i] = colIndex;
+    }
   }
 
   /**
    * @param a The first tuple to be compared
    * @param b The second tuple to be compared
-   * @return the difference of the values in a certain column of the two tuples
+   * @return a negative number, zero or a positive number as a is ordered
+   *         before, together with or after b
    */
   @Override
   public int compare(Tuple a, Tuple b) {
     // Iterate through all of the columns of interest
-    for (int i = 0; i < columns.size(); i++) {
-      String colName = columns.get(i).getColumnName();
-      String wholeColName = columns.get(i).getWholeColumnName();
-      int colIndex = schema.indexOf(colName);
-      if (colIndex == -1)
-        colIndex = schema.indexOf(wholeColName);
-      // If the column values are different, return the difference
-      if (a.getColumn(colIndex) != b.getColumn(colIndex))
-        return a.getColumn(colIndex) - b.getColumn(colIndex);
+    for (int i = 0; i < indices.length; i++) {
+      int x = a.getColumn(indices[i]);
+      int y = b.getColumn(indices[i]);
+      // If the column values are different, return their order
+      if (x != y)
+        return x < y ? -1 : 1;
     }
     return 0;
   }
@@ -0,0 +1,310 @@
+import java.util.*;
+import java.util.concurrent.*;
+import net.sf.jsqlparser.expression.*;
+
+/**
+ * ParallelHashJoinOperator is a hash join that uses a number of worker
+ * threads. Both children are read into memory, then radix partitioned on a
+ * hash of their join key: each worker counts the tuples of a slice of the input
+ * per partition, the counts give every worker its own positions in every
+ * partition, and the workers copy their slices into place without locking.
+ * There are PARTITIONS partitions whatever the number of threads, several per
+ * thread, so that uneven partitions still keep every thread busy. The workers then join the partitions independently,
+ * each building a hash table on the build side of a partition and probing it
+ * with the probe side of the same partition. The build side is read first, and
+ * a JoinFilter of its first key column is pushed down to the probe side before
+ * that is read.
+ *
+ * getNextTuple returns the output of the partitions in partition order,
+ * waiting for a partition only if its worker has not finished it yet, so the
+ * output does not depend on the number of threads. The output is kept, and a
+ * reset replays it without reading the children again.
+ */
+public class ParallelHashJoinOperator extends JoinOperator {
+
+  static final int PARTITIONS = 64;
+
+  boolean buildLeft;
+  int threads;
+  int[] leftKeys;
+  int[] rightKeys;
+  Expression residual;
+  int mask;
+
+  // The output of every partition, and the position in it
+  ArrayList<Future<ArrayList<Tuple>>> results;
+  int part;
+  ArrayList<Tuple> output;
+  int ind;
+
+  /**
+   * Constructor for the ParallelHashJoinOperator class.
+   *
+   * @param l The left child operator
+   * @param r The right child operator
+   * @param e The join condition, with at least one equality of a left and a
+   *          right column
+   * @param b true to build the hash tables on the left child, false to build
+   *          them on the right child
+   * @param t The number of worker threads
+   * @return a ParallelHashJoinOperator instance
+   */
+  public ParallelHashJoinOperator(Operator l, Operator r, Expression e, boolean b, int t) {
+    super(l, r, e);
+    buildLeft = b;
+    threads = Math.max(t, 1);
+    int[][] keys = getJoinKeys();
+    leftKeys = keys[0];
+    rightKeys = keys[1];
+    residual = getResidual();
+    mask = PARTITIONS - 1;
+  }
+
+  /**
+   * Both children are read into memory once before the join starts, so the
+   * right child is never materialized.
+   */
+  void prepareInner() {
+  }
+
+  /**
+   * @param t    A tuple
+   * @param keys The positions of the key columns in the tuple
+   * @return A hash of the key of the tuple, whose low bits pick its partition
+   */
+  private static int hash(Tuple t, int[] keys) {
+    int h = 0;
+    for (int k : keys) {
+      h = h * 31 + t.getColumn(k);
+    }
+    h *= 0x9E3779B1;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Runs tasks on the workers and waits for all of them.
+   */
+  private static void runAll(ExecutorService workers, ArrayList<Callable<Object>> tasks) throws Exception {
+    for (Future<Object> f : workers.invokeAll(tasks)) {
+      f.get();
+    }
+  }
+
+  /**
+   * Radix partitions tuples on their join key.
+   *
+   * @param workers The worker threads
+   * @param tuples  The tuples of one child
+   * @param keys    The positions of their key columns
+   * @param start   Filled with the position of the first tuple of every
+   *                partition, followed by the number of tuples
+   * @return The tuples, grouped by partition
+   */
+  private Tuple[] partition(ExecutorService workers, final ArrayList<Tuple> tuples, final int[] keys, int[] start)
+      throws Exception {
+    final int n = tuples.size();
+    final int slices = threads;
+    final int[] hashes = new int[n];
+    final int[][] counts = new int[slices][mask + 1];
+    ArrayList<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+    for (int s = 0; s < slices; s++) {
+      final int slice = s;
+      tasks.add(new Callable<Object>() {
+        public Object call() {
+          for (int i = (int) ((long) n * slice / slices); i < (long) n * (slice + 1) / slices; i++) {
+            hashes[i] = hash(tuples.get(i), keys);
+            counts[slice][hashes[i] & mask]++;
+          }
+          return null;
+        }
+      });
+    }
+    runAll(workers, tasks);
+
+    // Every slice writes its tuples of a partition after those of the slices
+    // before it
+    final int[][] next = new int[slices][mask + 1];
+    int pos = 0;
+    for (int p = 0; p <= mask; p++) {
+      start[p] = pos;
+      for (int s = 0; s < slices; s++) {
+        next[s][p] = pos;
+        pos += counts[s][p];
+      }
+    }
+    start[mask + 1] = n;
+
+    final Tuple[] grouped = new Tuple[n];
+    tasks.clear();
+    for (int s = 0; s < slices; s++) {
+      final int slice = s;
+      tasks.add(new Callable<Object>() {
+        public Object call() {
+          for (int i = (int) ((long) n * slice / slices); i < (long) n * (slice + 1) / slices; i++) {
+            grouped[next[slice][hashes[i] & mask]++] = tuples.get(i);
+          }
+          return null;
+        }
+      });
+    }
+    runAll(workers, tasks);
+    return grouped;
+  }
+
+  /**
+   * @param tuples Filled with the tuples of the left child
+   */
+  private void readLeft(ArrayList<Tuple> tuples) {
+    while (leftTuple != null) {
+      tuples.add(leftTuple);
+      leftTuple = nextLeftTuple();
+    }
+  }
+
+  /**
+   * @param tuples Filled with the tuples of the right child
+   */
+  private void readRight(ArrayList<Tuple> tuples) {
+    Tuple t = right.getNextTuple();
+    while (t != null) {
+      tuples.add(t);
+      t = right.getNextTuple();
+    }
+  }
+
+  /**
+   * Pushes a JoinFilter of a key column of the build side down to the probe
+   * side.
+   *
+   * @param builds The tuples of the build side
+   * @param key    The position of the key column in them
+   * @param probe  The position of the equal column of the probe side in the
+   *               joined tuples
+   */
+  private void pushFilter(ArrayList<Tuple> builds, int key, int probe) {
+    JoinFilter f = newJoinFilter(builds.size());
+    if (f != null) {
+      HashSet<Integer> distinct = new HashSet<Integer>();
+      for (Tuple t : builds) {
+        f.add(t.getColumn(key));
+        distinct.add(t.getColumn(key));
+      }
+      f.finish(distinct.size());
+      pushJoinFilter(probe, f);
+    }
+  }
+
+  /**
+   * Reads both children, partitions them and hands the join of every partition
+   * to the workers.
+   */
+  private void start() throws Exception {
+    ArrayList<Tuple> lefts = new ArrayList<Tuple>();
+    ArrayList<Tuple> rights = new ArrayList<Tuple>();
+    // The build side is read first so its keys can filter the probe side
+    if (buildLeft) {
+      readLeft(lefts);
+      pushFilter(lefts, leftKeys[0], leftSchema.size() + rightKeys[0]);
+      readRight(rights);
+    } else {
+      readRight(rights);
+      pushFilter(rights, rightKeys[0], leftKeys[0]);
+      readLeft(lefts);
+    }
+
+    ExecutorService workers = Executors.newFixedThreadPool(threads);
+    final int[] leftStart = new int[mask + 2];
+    final int[] rightStart = new int[mask + 2];
+    final Tuple[] leftParts = partition(workers, lefts, leftKeys, leftStart);
+    final Tuple[] rightParts = partition(workers, rights, rightKeys, rightStart);
+
+    results = new ArrayList<Future<ArrayList<Tuple>>>();
+    for (int p = 0; p <= mask; p++) {
+      final int from = p;
+      results.add(workers.submit(new Callable<ArrayList<Tuple>>() {
+        public ArrayList<Tuple> call() {
+          if (buildLeft) {
+            return join(rightParts, rightStart[from], rightStart[from + 1], rightKeys, leftParts,
+                leftStart[from], leftStart[from + 1], leftKeys);
+          }
+          return join(leftParts, leftStart[from], leftStart[from + 1], leftKeys, rightParts, rightStart[from],
+              rightStart[from + 1], rightKeys);
+        }
+      }));
+    }
+    workers.shutdown();
+  }
+
+  /**
+   * Joins one partition of both children. It runs on a worker, so it has an
+   * ExpVisitor of its own.
+   *
+   * @return The combined tuples of the partition that satisfy the join
+   *         condition
+   */
+  private ArrayList<Tuple> join(Tuple[] probes, int probeFrom, int probeTo, int[] probeKeys, Tuple[] builds,
+      int buildFrom, int buildTo, int[] buildKeys) {
+    HashMap<Tuple, ArrayList<Tuple>> table = new HashMap<Tuple, ArrayList<Tuple>>();
+    for (int i = buildFrom; i < buildTo; i++) {
+      Tuple k = key(builds[i], buildKeys);
+      ArrayList<Tuple> list = table.get(k);
+      if (list == null) {
+        list = new ArrayList<Tuple>();
+        table.put(k, list);
+      }
+      list.add(builds[i]);
+    }
+
+    ExpVisitor v = new ExpVisitor();
+    v.setSchema(newSchema);
+    ArrayList<Tuple> out = new ArrayList<Tuple>();
+    for (int i = probeFrom; i < probeTo; i++) {
+      ArrayList<Tuple> matches = table.get(key(probes[i], probeKeys));
+      if (matches == null) {
+        continue;
+      }
+      for (Tuple other : matches) {
+        Tuple newOne = buildLeft ? other.combine(probes[i]) : probes[i].combine(other);
+        if (residual != null) {
+          v.setTuple(newOne);
+          residual.accept(v);
+          if (!v.getOutcome()) {
+            continue;
+          }
+        }
+        out.add(newOne);
+      }
+    }
+    return out;
+  }
+
+  /**
+   * @return The next combined tuple whose keys are equal and that satisfies the
+   *         rest of the join condition
+   */
+  public Tuple getNextTuple() {
+    try {
+      if (results == null) {
+        start();
+      }
+      while (output == null || ind >= output.size()) {
+        if (part >= results.size()) {
+          return null;
+        }
+        output = results.get(part++).get();
+        ind = 0;
+      }
+      return output.get(ind++);
+    } catch (Exception e) {
+      System.out.println(e);
+      return null;
+    }
+  }
+
+  /** Replays the output from its first tuple */
+  public void reset() {
+    part = 0;
+    output = null;
+    ind = 0;
+  }
+}
@@ -0,0 +1,249 @@
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PrefetchTupleReader reads ahead of a scan. A background thread reads batches
+ * of tuples from another TupleReader into a bounded queue while the scan's
+ * thread takes them out, so the disk reads and the decoding of the next
+ * tuples overlap with the evaluation of predicates and joins above the scan.
+ * It is a TupleReader itself, so ScanOperator and the operators above it see
+ * the same getNextTuple contract as before.
+ *
+ * Reading ahead starts with the first readNextTuple. Every reader has a single
+ * background thread, which reads one pass over the input at a time and waits
+ * for the next pass after a reset; stopping a pass makes it stop reading at
+ * once, so a reset or close never reads the rest of the input.
+ */
+public class PrefetchTupleReader implements TupleReader {
+
+  public static final int BATCH_SIZE = 512;
+
+  // Marks the end of the input in the queue
+  private static final Tuple[] END = new Tuple[0];
+
+  TupleReader reader;
+  ArrayBlockingQueue<Tuple[]> queue;
+  Thread producer;
+  volatile boolean stopped;
+  volatile IOException failure;
+  Tuple[] batch = END;
+  int ind;
+  boolean atEnd;
+  // Whether the consumer has asked for the current pass
+  boolean begun;
+  // Guarded by this: a pass is asked for, a pass is being read, the reader is
+  // closed
+  boolean requested;
+  boolean running;
+  boolean closed;
+
+  /**
+   * Constructor for the PrefetchTupleReader class. Reading ahead starts with
+   * the first tuple read.
+   * 
+   * @param r     The reader to be read ahead of
+   * @param depth The number of batches that may be waiting in the queue
+   * @return a PrefetchTupleReader instance
+   */
+  public PrefetchTupleReader(TupleReader r, int depth) {
+    reader = r;
+    queue = new ArrayBlockingQueue<Tuple[]>(Math.max(depth, 1));
+  }
+
+  /**
+   * Asks the background thread, started on the first call, to fill the queue
+   * from the current position of the reader.
+   */
+  private void begin() {
+    if (producer == null) {
+      producer = new Thread(new Runnable() {
+        public void run() {
+          while (awaitPass()) {
+            readPass();
+            synchronized (PrefetchTupleReader.this) {
+              running = false;
+              PrefetchTupleReader.this.notifyAll();
+            }
+          }
+        }
+      });
+      producer.setDaemon(true);
+      producer.start();
+    }
+    synchronized (this) {
+      stopped = false;
+      requested = true;
+      notifyAll();
+    }
+    begun = true;
+  }
+
+  /**
+   * Waits until a pass is asked for or the reader is closed.
+   * 
+   * @return false if the reader is closed
+   */
+  private synchronized boolean awaitPass() {
+    try {
+      while (!requested && !closed) {
+        wait();
+      }
+    } catch (InterruptedException e) {
+      return false;
+    }
+    if (closed) {
+      return false;
+    }
+    requested = false;
+    running = true;
+    return true;
+  }
+
+  /**
+   * Fills the queue until the end of the input or until the pass is stopped.
+   */
+  private void readPass() {
+    try {
+      Tuple[] next;
+      do {
+        next = new Tuple[BATCH_SIZE];
+        int n = 0;
+        Tuple t;
+        while (n < BATCH_SIZE && (t = reader.readNextTuple()) != null) {
+          next[n++] = t;
+        }
+        if (n < BATCH_SIZE) {
+          Tuple[] last = new Tuple[n];
+          System.arraycopy(next, 0, last, 0, n);
+          next = last;
+        }
+        if (!put(next)) {
+          return;
+        }
+      } while (!stopped && next.length == BATCH_SIZE);
+      put(END);
+    } catch (IOException e) {
+      failure = e;
+      put(END);
+    }
+  }
+
+  /**
+   * Waits for room in the queue, giving up if the pass is stopped.
+   * 
+   * @return false if the batch was not queued
+   */
+  private boolean put(Tuple[] b) {
+    try {
+      while (!stopped) {
+        if (queue.offer(b, 10, TimeUnit.MILLISECONDS)) {
+          return true;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return false;
+  }
+
+  /**
+   * @return The next tuple of the current batch, waiting for the next batch when
+   *         the current one is used up
+   */
+  public Tuple readNextTuple() throws IOException {
+    if (closed) {
+      throw new IOException("Read-ahead reader is closed");
+    }
+    if (!begun) {
+      begin();
+    }
+    while (ind >= batch.length) {
+      if (atEnd) {
+        return null;
+      }
+      try {
+        batch = queue.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for read-ahead");
+      }
+      ind = 0;
+      if (batch.length == 0) {
+        atEnd = true;
+        if (failure != null) {
+          throw failure;
+        }
+      }
+    }
+    return batch[ind++];
+  }
+
+  /**
+   * Stops the current pass and waits for the background thread to leave it,
+   * discarding the batches it has read, so the reader can be repositioned.
+   */
+  private void stop() {
+    stopped = true;
+    synchronized (this) {
+      requested = false;
+      try {
+        while (running) {
+          wait();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    queue.clear();
+    failure = null;
+    batch = END;
+    ind = 0;
+    atEnd = false;
+    begun = false;
+  }
+
+  /**
+   * Passes the rows of interest on to the reader that is read ahead of. Reading
+   * ahead starts from the first tuple again with the next tuple read.
+   * 
+   * @param ranges The rows of interest, or null for every row
+   */
+  public void setCandidateRows(long[][] ranges) throws IOException {
+    stop();
+    reader.setCandidateRows(ranges);
+  }
+
+  /**
+   * Passes the filter on to the reader that is read ahead of, which applies it
+   * from the next row it reads. Rows already read ahead are still returned.
+   * 
+   * @param column The position of the filtered column
+   * @param f      The filter
+   */
+  public void addJoinFilter(int column, JoinFilter f) {
+    reader.addJoinFilter(column, f);
+  }
+
+  /**
+   * Resets to the first tuple. Reading ahead starts from there again with the
+   * next tuple read.
+   */
+  public void reset() throws IOException {
+    stop();
+    reader.reset();
+  }
+
+  /**
+   * Stops reading ahead, ends the background thread and closes the underlying
+   * reader.
+   */
+  public void close() throws IOException {
+    stop();
+    synchronized (this) {
+      closed = true;
+      notifyAll();
+    }
+    reader.close();
+  }
+}
@@ -0,0 +1,110 @@
+import java.io.IOException;
+
+/**
+ * PrefetchTupleReaderTest checks that a PrefetchTupleReader stops reading
+ * ahead when it is reset or closed after only part of its input was read,
+ * instead of reading the rest of the input first, and that it keeps a single
+ * background thread across resets. It reads from a generated input that
+ * counts the rows read from it, and exits with status 1 if a check fails.
+ *
+ * Usage: PrefetchTupleReaderTest
+ */
+public class PrefetchTupleReaderTest {
+
+  static final int ROWS = 5000000;
+  static final int DEPTH = 4;
+
+  /**
+   * A TupleReader of ROWS generated rows that counts the rows read, in the
+   * current pass and in all passes
+   */
+  static class CountingReader implements TupleReader {
+    volatile int read;
+    volatile int total;
+    boolean closed;
+
+    public Tuple readNextTuple() {
+      if (read >= ROWS) {
+        return null;
+      }
+      read++;
+      total++;
+      return new Tuple(new int[] { read - 1 });
+    }
+
+    public void setCandidateRows(long[][] ranges) {
+      read = 0;
+    }
+
+    public void addJoinFilter(int column, JoinFilter f) {
+    }
+
+    public void reset() {
+      read = 0;
+    }
+
+    public void close() {
+      closed = true;
+    }
+  }
+
+  static int failures;
+
+  static void check(boolean ok, String what) {
+    System.out.println((ok ? "ok    " : "FAIL  ") + what);
+    if (!ok) {
+      failures++;
+    }
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    // The rows read ahead of the consumer are bounded by the queue and the
+    // batch being filled
+    int slack = (DEPTH + 2) * PrefetchTupleReader.BATCH_SIZE;
+
+    CountingReader counting = new CountingReader();
+    PrefetchTupleReader r = new PrefetchTupleReader(counting, DEPTH);
+    Thread.sleep(50);
+    check(counting.read == 0, "nothing is read before the first tuple is asked for");
+
+    for (int i = 0; i < 2048; i++) {
+      r.readNextTuple();
+    }
+    Thread producer = r.producer;
+    r.reset();
+    check(counting.total <= 2048 + slack, "reset after a partial read does not read the rest of the input");
+    check(r.readNextTuple().getColumn(0) == 0, "reading starts again at the first tuple after a reset");
+    check(r.producer == producer, "the background thread is kept across a reset");
+
+    for (int i = 0; i < 2048; i++) {
+      r.readNextTuple();
+    }
+    int before = counting.total;
+    r.setCandidateRows(null);
+    check(counting.total == before, "setCandidateRows after a partial read does not read the rest of the input");
+
+    for (int i = 0; i < 2048; i++) {
+      r.readNextTuple();
+    }
+    before = counting.total;
+    r.close();
+    check(counting.total == before && counting.read <= 2048 + slack,
+        "close after a partial read stops reading (" + counting.read + " rows read)");
+    check(counting.closed, "close closes the underlying reader");
+    producer.join(1000);
+    check(!producer.isAlive(), "close ends the background thread");
+
+    CountingReader all = new CountingReader();
+    PrefetchTupleReader whole = new PrefetchTupleReader(all, DEPTH);
+    int n = 0;
+    while (whole.readNextTuple() != null) {
+      n++;
+    }
+    check(n == ROWS, "a full read returns every row");
+    whole.close();
+
+    if (failures > 0) {
+      System.exit(1);
+    }
+  }
+}
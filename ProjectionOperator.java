@@ -18,6 +18,7 @@ public class ProjectionOperator extends Operator {
   ArrayList<String> oldSchema;
   ArrayList<String> newSchema = new ArrayList<String>();
   ArrayList<Integer> colIndices;
+  int[] indices;
 
   /**
    * Constructor for the ProjectionOperator class.
@@ -44,6 +45,15 @@ public class ProjectionOperator extends Operator {
       }
       colIndices.add(colIndex);
     }
+    indices = new int[colIndices.size()];
+    for (int i = 0; i < indices.length; i++) {
+      indices[i] = colIndices.get(i);
+    }
+  }
+
+  /** Closes the child */
+  public void close() {
+    operator.close();
   }
 
   /** Reset to the beginning of the tuples by setting ind to 0 */
@@ -65,13 +75,13 @@ public class ProjectionOperator extends Operator {
    */
   public Tuple getNextTuple() {
     Tuple t = operator.getNextTuple();
-    ArrayList<Integer> list = new ArrayList<>();
     if (t != null) {
       // Iterate through the selected columns and add those values to a new tuple
-      for (int i : colIndices) {
-        list.add(t.getColumn(i));
+      int[] values = new int[indices.length];
+      for (int i = 0; i < indices.length; i++) {
+        values[i] = t.getColumn(indices[i]);
       }
-      return new Tuple(list);
+      return new Tuple(values);
     }
     return t;
 
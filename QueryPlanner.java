@@ -1,6 +1,7 @@
 
 import net.sf.jsqlparser.statement.select.*;
 import net.sf.jsqlparser.expression.*;
+import net.sf.jsqlparser.expression.operators.relational.*;
 import net.sf.jsqlparser.schema.*;
 
 import java.io.*;
@@ -37,16 +38,11 @@ public class QueryPlanner {
         tables.add("" + cur_body);
       }
       List<Join> j = body.getJoins();
-
-      // Handles the join clause of the query inside this if statement
       if (j != null) {
-        Expression exp = body.getWhere();
-        ArrayList<Join> joins = new ArrayList<Join>(j);
-
         String table;
         String al;
         // Get the aliases into the Hashmap if there are any used in the join.
-        for (Join jo : joins) {
+        for (Join jo : j) {
           if (alias != null) {
             table = jo.toString().split(" ")[0];
             al = jo.toString().split(" ")[2];
@@ -58,17 +54,30 @@ public class QueryPlanner {
             aliases.put(table, table);
           }
         }
+      }
+      // Add the conjuncts implied by the equalities of the WHERE clause, unless
+      // "predicate_inference" is off
+      if (!"off".equals(DatabaseCatalog.getInstance().getSetting("predicate_inference", null))) {
+        body.setWhere(WhereVisitor.inferPredicates(body.getWhere()));
+      }
+      HashMap<String, HashSet<String>> required = getRequiredColumns(body, tables);
+      ArrayList<String> fromOrder = tables;
+      tables = orderTables(tables, aliases, body.getWhere());
+
+      // Handles the join clause of the query inside this if statement
+      if (j != null) {
+        Expression exp = body.getWhere();
         // Execute the where part of the query on both tables of join
         WhereVisitor w = new WhereVisitor(tables);
         exp.accept(w);
         String leftTable = tables.get(0);
 
         // create operators for the left table
-        Operator leftop = new ScanOperator(leftTable, aliases, writer);
-        if (w.combineExpression(new ArrayList<String>(Arrays.asList(leftTable))) != null) {
-          leftop = new SelectOperator(w.combineExpression(new ArrayList<String>(Arrays.asList(leftTable))),
-              (ScanOperator) leftop);
-        }
+        Expression leftExp = w.combineExpression(new ArrayList<String>(Arrays.asList(leftTable)));
+        Operator leftop = getSelection(leftTable, aliases, writer, required.get(leftTable), leftExp);
+        double leftRows = estimateRows(aliases.get(leftTable), leftExp);
+        String sortMerge = DatabaseCatalog.getInstance().getSetting("join_sort_merge", null);
+        List<OrderByElement> orderBy = getOrderByElements(body);
         JoinOperator result;
         /**
          * Combine the expressions for the rest of the tables after the first one such
@@ -76,11 +85,7 @@ public class QueryPlanner {
          */
         for (int i = 0; i < tables.size() - 1; i++) {
           String rightTable = tables.get(i + 1);
-          Operator rightop = new ScanOperator(rightTable, aliases, writer);
-          if (w.combineExpression(new ArrayList<String>(Arrays.asList(rightTable))) != null) {
-            rightop = new SelectOperator(w.combineExpression(new ArrayList<String>(Arrays.asList(rightTable))),
-                (ScanOperator) rightop);
-          }
+          Expression rightExp = w.combineExpression(new ArrayList<String>(Arrays.asList(rightTable)));
           ArrayList<String> key = new ArrayList<String>(tables.subList(0, (i + 1) + 1));
           Expression joinConditions = w.combineExpression(key);
           if (i + 1 >= tables.size() - 1) {
@@ -89,19 +94,61 @@ public class QueryPlanner {
 
           /**
            * Create a join Operator using the left and right operator and the combined
-           * expressions/join conditions.
+           * expressions/join conditions. An equi-join on an indexed column of the
+           * right table probes the index instead of rescanning the table, any other
+           * equi-join is a hash join, built on the side estimated to be smaller and
+           * spilling partitions to disk beyond "join_memory_pages" if that is set, or
+           * else split between "join_threads" threads if there is more than one, and
+           * "join_block_pages" makes the remaining joins rescan the right table once
+           * per block of left tuples instead of once per left tuple. Equi-joins are
+           * sort-merge joins instead if "join_sort_merge" is on, and the last join is
+           * one if the ORDER BY starts with its key, unless the setting is off, so
+           * the ORDER BY may not need another sort.
            */
-          result = new JoinOperator(leftop, rightop, joinConditions);
+          ArrayList<String> leftTables = new ArrayList<String>(tables.subList(0, i + 1));
+          ArrayList<Column[]> joinColumns = getJoinColumns(joinConditions, rightTable, leftTables);
+          double rightRows = estimateRows(aliases.get(rightTable), rightExp);
+          result = getIndexJoin(leftop, rightTable, leftTables, aliases, writer, rightExp, joinConditions);
+          if (result == null) {
+            Operator rightop = getSelection(rightTable, aliases, writer, required.get(rightTable), rightExp);
+            int blockPages = DatabaseCatalog.getInstance().getIntSetting("join_block_pages", 0);
+            boolean merge = "on".equals(sortMerge) || (sortMerge == null && i + 1 == tables.size() - 1
+                && startsWithJoinColumn(orderBy, joinColumns));
+            if (!joinColumns.isEmpty() && merge) {
+              result = new SortMergeJoinOperator(leftop, rightop, joinConditions);
+            } else if (!joinColumns.isEmpty()
+                && !"off".equals(DatabaseCatalog.getInstance().getSetting("join_hash", null))) {
+              boolean buildLeft = leftRows >= 0 && rightRows >= 0 && leftRows < rightRows;
+              int memoryPages = DatabaseCatalog.getInstance().getIntSetting("join_memory_pages", 0);
+              int threads = DatabaseCatalog.getInstance().getIntSetting("join_threads", 1);
+              if (memoryPages > 0) {
+                result = new GraceHashJoinOperator(leftop, rightop, joinConditions, buildLeft, memoryPages);
+              } else if (threads > 1) {
+                result = new ParallelHashJoinOperator(leftop, rightop, joinConditions, buildLeft, threads);
+              } else {
+                result = new HashJoinOperator(leftop, rightop, joinConditions, buildLeft);
+              }
+            } else if (blockPages > 0) {
+              result = new BlockNestedLoopJoinOperator(leftop, rightop, joinConditions, blockPages);
+            } else {
+              result = new JoinOperator(leftop, rightop, joinConditions);
+            }
+          }
+          addBloomFilter(result, rightTable, leftTables, aliases, joinConditions);
           leftop = result;
+          leftRows = estimateJoinRows(leftRows, rightRows, joinColumns, aliases);
 
         }
 
         Operator output = leftop;
         List<SelectItem> itemList = body.getSelectItems();
 
-        // create a ProjectionOperator if it is not returning all columns.
+        // create a ProjectionOperator if it is not returning all columns, or if
+        // the tables were joined in another order than the FROM clause lists them
         if (itemList.get(0) instanceof AllColumns) {
-          last = output;
+          if (!tables.equals(fromOrder)) {
+            output = new ProjectionOperator(getAllColumns(fromOrder, aliases), output);
+          }
         } else {
           ArrayList<Column> colNames = new ArrayList<Column>();
           for (SelectItem i : itemList) {
@@ -117,13 +164,9 @@ public class QueryPlanner {
         // This is the case without join
         // non-optional scan operator
 
-        Operator op = new ScanOperator(tables.get(0), aliases, writer);
-
         // create SelectOperator using the WHERE part of the query
         Expression exp = body.getWhere();
-        if (exp != null) {
-          op = new SelectOperator(exp, (ScanOperator) op);
-        }
+        Operator op = getSelection(tables.get(0), aliases, writer, required.get(tables.get(0)), exp);
 
         List<SelectItem> itemList = body.getSelectItems();
         // no projection if it needs all columns
@@ -141,7 +184,22 @@ public class QueryPlanner {
         }
         last = op;
       }
-      // Create a SortOperator if the query has an ORDER BY clause
+      // The number of tuples a LIMIT clause keeps after those it skips, or -1
+      // without a LIMIT or OFFSET. LIMIT ALL keeps every tuple, and so does an
+      // OFFSET without a LIMIT, which the parser reads as a row count of 0
+      Limit limit = body.getLimit();
+      long limitRows = -1;
+      long limitOffset = 0;
+      if (limit != null) {
+        limitOffset = limit.isOffsetJdbcParameter() ? 0 : limit.getOffset();
+        limitRows = limit.isLimitAll() || limit.isRowCountJdbcParameter()
+            || (limit.getRowCount() == 0 && limitOffset > 0) ? Long.MAX_VALUE : limit.getRowCount();
+      }
+      boolean topN = false;
+
+      // Create a SortOperator if the query has an ORDER BY clause, or a
+      // TopNSortOperator that only keeps the first rows if it also has a LIMIT
+      // and no DISTINCT, which could remove some of them
       if (body.getOrderByElements() != null) {
         List<OrderByElement> cols = body.getOrderByElements();
         ArrayList<OrderByElement> tr = new ArrayList<OrderByElement>(cols);
@@ -151,7 +209,18 @@ public class QueryPlanner {
           current = (Column) tr.get(i).getExpression();
           columnNames.add(current);
         }
-        last = new SortOperator(columnNames, last);
+        // A sort-merge join at the top may already produce the wanted order
+        Operator top = last instanceof ProjectionOperator ? ((ProjectionOperator) last).operator : last;
+        if (!(top instanceof SortMergeJoinOperator)
+            || !((SortMergeJoinOperator) top).isSortedOn(columnNames, last.getSchema())) {
+          if (limitRows >= 0 && limitRows != Long.MAX_VALUE && body.getDistinct() == null
+              && limitRows + limitOffset <= Integer.MAX_VALUE) {
+            last = new TopNSortOperator(columnNames, last, (int) (limitRows + limitOffset));
+            topN = true;
+          } else {
+            last = new SortOperator(columnNames, last);
+          }
+        }
 
       }
       Distinct d = body.getDistinct();
@@ -164,10 +233,556 @@ public class QueryPlanner {
         }
         last = new DuplicateEliminationOperator(last);
       }
+
+      // Create a LimitOperator if the query has a LIMIT or OFFSET clause, so the
+      // operators below stop once the limit is reached
+      if (limitRows >= 0 && (limitRows != Long.MAX_VALUE || limitOffset > 0) && (!topN || limitOffset > 0)) {
+        last = new LimitOperator(last, limitRows, limitOffset);
+      }
       return last;
     } catch (IOException e) {
       System.out.println(e);
       return null;
     }
   }
+
+  /**
+   * Chooses the order in which the left deep tree joins the tables. If every
+   * table has ANALYZE statistics, a Selinger-style dynamic program over the sets
+   * of tables finds the left deep order with the smallest estimated cost: the
+   * rows every join reads and produces, counted for the algorithm the join will
+   * use (an index nested loop join, a hash join or a nested loop join). A table
+   * only joins a set it has no join condition with if no other table has one
+   * either, so there are no cross products when the conditions connect the
+   * tables. Without statistics the FROM order is kept, except that such a table
+   * waits for the first later table that is connected. "join_order from" always
+   * keeps the FROM order.
+   * 
+   * @param tables  The names (or aliases) of the tables in FROM order
+   * @param aliases The HashMap of aliases of the tables in the query
+   * @param where   The WHERE clause, or null
+   * @return The tables in the order they are to be joined
+   */
+  private ArrayList<String> orderTables(ArrayList<String> tables, HashMap<String, String> aliases, Expression where) {
+    int n = tables.size();
+    if (n < 2 || "from".equals(DatabaseCatalog.getInstance().getSetting("join_order", null))) {
+      return tables;
+    }
+
+    // Count the conjuncts relating every two tables, and estimate what the
+    // conjuncts on a single table leave of it
+    int[][] conditions = new int[n][n];
+    for (Expression conjunct : WhereVisitor.getConjuncts(where)) {
+      WhereVisitor w = new WhereVisitor(tables);
+      conjunct.accept(w);
+      TreeSet<Integer> related = new TreeSet<Integer>();
+      for (Column c : w.getColumns()) {
+        int i = c.getTable() == null ? -1 : tables.indexOf(c.getTable().getName());
+        if (i != -1) {
+          related.add(i);
+        }
+      }
+      if (related.size() == 2) {
+        conditions[related.first()][related.last()]++;
+        conditions[related.last()][related.first()]++;
+      }
+    }
+    int[] adjacent = new int[n];
+    for (int a = 0; a < n; a++) {
+      for (int b = 0; b < n; b++) {
+        if (conditions[a][b] > 0) {
+          adjacent[a] |= 1 << b;
+        }
+      }
+    }
+    WhereVisitor all = new WhereVisitor(tables);
+    if (where != null) {
+      where.accept(all);
+    }
+    double[] rows = new double[n];
+    boolean analyzed = n <= 16;
+    for (int i = 0; i < n; i++) {
+      rows[i] = estimateRows(aliases.get(tables.get(i)),
+          all.combineExpression(new ArrayList<String>(Arrays.asList(tables.get(i)))));
+      analyzed &= rows[i] >= 0;
+    }
+    int[] order = analyzed ? orderByCost(tables, aliases, where, rows, conditions, adjacent)
+        : orderByConnections(n, adjacent);
+    ArrayList<String> ordered = new ArrayList<String>();
+    for (int i : order) {
+      ordered.add(tables.get(i));
+    }
+    return ordered;
+  }
+
+  /**
+   * @param n        The number of tables
+   * @param adjacent For every table, the set of tables it has join conditions
+   *                 with, as bits
+   * @return The positions of the tables in FROM order, where a table that has no
+   *         join condition with the tables before it waits for the first table
+   *         that has one, if there is one
+   */
+  private static int[] orderByConnections(int n, int[] adjacent) {
+    int[] order = new int[n];
+    int joined = 0;
+    for (int k = 0; k < n; k++) {
+      int next = -1;
+      for (int i = 0; i < n && next == -1; i++) {
+        if ((joined & 1 << i) == 0 && (k == 0 || (adjacent[i] & joined) != 0)) {
+          next = i;
+        }
+      }
+      for (int i = 0; i < n && next == -1; i++) {
+        if ((joined & 1 << i) == 0) {
+          next = i;
+        }
+      }
+      order[k] = next;
+      joined |= 1 << next;
+    }
+    return order;
+  }
+
+  /**
+   * Finds the left deep order with the smallest estimated cost by dynamic
+   * programming over the sets of tables, keeping for every set the cheapest
+   * order that joins it and the number of rows it produces. Ties keep the
+   * order that is found first, which is the FROM order when nothing else is
+   * cheaper.
+   * 
+   * @param tables   The names (or aliases) of the tables in FROM order
+   * @param aliases  The HashMap of aliases of the tables in the query
+   * @param where    The WHERE clause
+   * @param rows       The estimated rows of every table after its own conjuncts
+   * @param conditions The number of conjuncts relating every two tables
+   * @param adjacent   For every table, the set of tables it has join conditions
+   *                   with, as bits
+   * @return The positions of the tables in the order they are to be joined
+   */
+  private int[] orderByCost(ArrayList<String> tables, HashMap<String, String> aliases, Expression where,
+      double[] rows, int[][] conditions, int[] adjacent) {
+    int n = tables.size();
+    DatabaseCatalog catalog = DatabaseCatalog.getInstance();
+    boolean indexJoins = !"off".equals(catalog.getSetting("index_join", null));
+    boolean hashJoins = !"off".equals(catalog.getSetting("join_hash", null));
+
+    int sets = 1 << n;
+    double[] cost = new double[sets];
+    double[] size = new double[sets];
+    int[][] best = new int[sets][];
+    for (int i = 0; i < n; i++) {
+      size[1 << i] = rows[i];
+      best[1 << i] = new int[] { i };
+    }
+    for (int set = 1; set < sets; set++) {
+      if (best[set] == null) {
+        continue;
+      }
+      ArrayList<String> left = new ArrayList<String>();
+      int connected = 0;
+      for (int i = 0; i < n; i++) {
+        if ((set & 1 << i) != 0) {
+          left.add(tables.get(i));
+          connected |= adjacent[i];
+        }
+      }
+      connected &= ~set;
+      for (int t = 0; t < n; t++) {
+        if ((set & 1 << t) != 0 || (connected != 0 && (connected & 1 << t) == 0)) {
+          continue;
+        }
+        // Every equality with the set keeps one pair in the larger number of
+        // distinct values, every other condition a third of the pairs
+        String table = tables.get(t);
+        ArrayList<Column[]> pairs = getJoinColumns(where, table, left);
+        int others = -pairs.size();
+        for (int i = 0; i < n; i++) {
+          if ((set & 1 << i) != 0) {
+            others += conditions[i][t];
+          }
+        }
+        double out = estimateJoinRows(size[set], rows[t], pairs, aliases) * Math.pow(1.0 / 3, others);
+
+        double work;
+        if (!pairs.isEmpty() && indexJoins && hasIndex(aliases.get(table), pairs)) {
+          work = size[set] + out;
+        } else if (!pairs.isEmpty() && hashJoins) {
+          work = size[set] + rows[t];
+        } else {
+          work = size[set] * rows[t];
+        }
+        int next = set | 1 << t;
+        double total = cost[set] + work + out;
+        if (best[next] == null || total < cost[next]) {
+          cost[next] = total;
+          size[next] = out;
+          best[next] = Arrays.copyOf(best[set], best[set].length + 1);
+          best[next][best[set].length] = t;
+        }
+      }
+    }
+    return best[sets - 1];
+  }
+
+  /**
+   * @param base  The name of a table in the catalog
+   * @param pairs The pairs of columns a join equates, the second of the table
+   * @return true if the table has an index on one of its equated columns
+   */
+  private static boolean hasIndex(String base, ArrayList<Column[]> pairs) {
+    for (IndexInfo index : DatabaseCatalog.getInstance().getIndexes(base)) {
+      for (Column[] cols : pairs) {
+        if (index.getColumn().equals(cols[1].getColumnName())) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param tables  The names (or aliases) of the tables in FROM order
+   * @param aliases The HashMap of aliases of the tables in the query
+   * @return Every column of the tables, in FROM order, for restoring the column
+   *         order of SELECT * after the tables were joined in another order
+   */
+  private ArrayList<Column> getAllColumns(ArrayList<String> tables, HashMap<String, String> aliases) {
+    ArrayList<Column> columns = new ArrayList<Column>();
+    for (String table : tables) {
+      for (String col : DatabaseCatalog.getInstance().getSchema(aliases.get(table))) {
+        Column c = new Column();
+        Table tb = new Table();
+        tb.setName(table);
+        c.setTable(tb);
+        c.setColumnName(col);
+        columns.add(c);
+      }
+    }
+    return columns;
+  }
+
+  /**
+   * @param orderBy     The ORDER BY of the query, or null
+   * @param joinColumns The pairs of columns equated by a join condition
+   * @return true if the first ORDER BY column is one of the equated columns
+   */
+  private boolean startsWithJoinColumn(List<OrderByElement> orderBy, ArrayList<Column[]> joinColumns) {
+    if (orderBy == null || orderBy.isEmpty() || !(orderBy.get(0).getExpression() instanceof Column)) {
+      return false;
+    }
+    String first = ((Column) orderBy.get(0).getExpression()).getWholeColumnName();
+    for (Column[] cols : joinColumns) {
+      if (cols[0].getWholeColumnName().equals(first) || cols[1].getWholeColumnName().equals(first)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param base The name of a table in the catalog
+   * @param exp  The conjuncts that only reference the table, or null
+   * @return The number of tuples of the table estimated to satisfy the
+   *         conjuncts, from the histograms of the compared columns, or -1 if the
+   *         table has not been analyzed
+   */
+  private double estimateRows(String base, Expression exp) {
+    TableStats stats = DatabaseCatalog.getInstance().getStats(base);
+    if (stats == null) {
+      return -1;
+    }
+    double rows = stats.getRowCount();
+    for (ColumnRange range : ColumnRange.getRanges(exp)) {
+      ColumnStats col = stats.getColumn(range.getColumn().getColumnName());
+      if (col != null) {
+        rows *= col.estimateSelectivity(range.getLow(), range.getHigh());
+      }
+    }
+    return rows;
+  }
+
+  /**
+   * Estimates the size of a join assuming the values of every equated column
+   * are spread evenly: each equality keeps one pair in the larger of the two
+   * distinct counts.
+   * 
+   * @param leftRows    The estimated number of left tuples, or -1
+   * @param rightRows   The estimated number of right tuples, or -1
+   * @param joinColumns The pairs of columns equated by the join condition
+   * @param aliases     The HashMap of aliases of the tables in the query
+   * @return The estimated number of joined tuples, or -1 if an input is unknown
+   */
+  private double estimateJoinRows(double leftRows, double rightRows, ArrayList<Column[]> joinColumns,
+      HashMap<String, String> aliases) {
+    if (leftRows < 0 || rightRows < 0) {
+      return -1;
+    }
+    double rows = leftRows * rightRows;
+    // Equalities of one right column with several left columns are implied by
+    // each other, so only the first one is counted
+    HashSet<String> counted = new HashSet<String>();
+    for (Column[] cols : joinColumns) {
+      if (!counted.add(cols[1].getWholeColumnName())) {
+        continue;
+      }
+      long distinct = 1;
+      for (Column c : cols) {
+        TableStats stats = DatabaseCatalog.getInstance().getStats(aliases.get(c.getTable().getName()));
+        ColumnStats col = stats == null ? null : stats.getColumn(c.getColumnName());
+        if (col != null) {
+          distinct = Math.max(distinct, col.getDistinct());
+        }
+      }
+      rows /= distinct;
+    }
+    return rows;
+  }
+
+  /**
+   * Creates the operators reading one table and applying the conjuncts of the
+   * WHERE clause that only reference that table. The table is read through an
+   * IndexScanOperator when one of its indexes covers a range or equality in the
+   * conjuncts (only an equality for a hash index), and by a full scan otherwise.
+   * 
+   * @param table   The name (or alias) of the table
+   * @param aliases The HashMap of aliases of the tables in the query
+   * @param writer  The BufferedWriter used to write the output
+   * @param columns The columns of the table the query references, or null
+   * @param exp     The conjuncts that only reference the table, or null
+   * @return A ScanOperator, or a SelectOperator over one when exp is not null
+   */
+  private Operator getSelection(String table, HashMap<String, String> aliases, BufferedWriter writer,
+      HashSet<String> columns, Expression exp) throws IOException {
+    if (exp == null) {
+      return new ScanOperator(table, aliases, writer, columns);
+    }
+    ScanOperator scan = getIndexScan(table, aliases, writer, exp);
+    if (scan == null) {
+      scan = new ScanOperator(table, aliases, writer, columns);
+    }
+    return new SelectOperator(exp, scan);
+  }
+
+  /**
+   * Picks the cheapest index on the table that covers a column range of the
+   * conjuncts. When the table has been analyzed, reading through a clustered
+   * index is estimated to cost the fraction of the pages that match, and
+   * through an unclustered index one page per matching tuple; the index is only
+   * used if that is cheaper than reading every page. Without statistics a
+   * clustered index is preferred. Setting "index_scan off" disables indexes.
+   * 
+   * @param table   The name (or alias) of the table
+   * @param aliases The HashMap of aliases of the tables in the query
+   * @param writer  The BufferedWriter used to write the output
+   * @param exp     The conjuncts that only reference the table
+   * @return An IndexScanOperator over the range, or null if a full scan should
+   *         be used
+   */
+  private IndexScanOperator getIndexScan(String table, HashMap<String, String> aliases, BufferedWriter writer,
+      Expression exp) throws IOException {
+    DatabaseCatalog catalog = DatabaseCatalog.getInstance();
+    String base = aliases.get(table);
+    if ("off".equals(catalog.getSetting("index_scan", base))) {
+      return null;
+    }
+    TableStats stats = catalog.getStats(base);
+    IndexInfo best = null;
+    ColumnRange bestRange = null;
+    double bestCost = stats == null ? Double.MAX_VALUE : stats.getPageCount();
+    for (ColumnRange range : ColumnRange.getRanges(exp)) {
+      for (IndexInfo index : catalog.getIndexes(base)) {
+        if (!index.getColumn().equals(range.getColumn().getColumnName())) {
+          continue;
+        }
+        if (index.isHash() && range.getLow() != range.getHigh()) {
+          continue;
+        }
+        double cost;
+        ColumnStats col = stats == null ? null : stats.getColumn(index.getColumn());
+        if (col != null) {
+          double matches = col.estimateSelectivity(range.getLow(), range.getHigh());
+          cost = matches * (index.isClustered() ? stats.getPageCount() : stats.getRowCount());
+        } else {
+          cost = index.isClustered() ? 0 : 1;
+        }
+        if (cost < bestCost) {
+          best = index;
+          bestRange = range;
+          bestCost = cost;
+        }
+      }
+    }
+    if (best == null) {
+      return null;
+    }
+    long low = Math.max(bestRange.getLow(), Integer.MIN_VALUE);
+    long high = Math.min(bestRange.getHigh(), Integer.MAX_VALUE);
+    return new IndexScanOperator(table, aliases, writer, best, low, high);
+  }
+
+  /**
+   * Creates an IndexNestedLoopJoinOperator if a conjunct of the join condition
+   * equates a column of the right table that has an index with a column of a
+   * table already joined on the left, preferring a hash index to a B+ tree. The
+   * left tuples are sorted in batches of "index_join_batch_pages" pages (16 by
+   * default). Setting "index_join off" disables this.
+   * 
+   * @param leftop         The operator producing the left tuples
+   * @param rightTable     The name (or alias) of the right table
+   * @param leftTables     The names (or aliases) of the tables on the left
+   * @param aliases        The HashMap of aliases of the tables in the query
+   * @param writer         The BufferedWriter used to write the output
+   * @param rightExp       The conjuncts that only reference the right table, or
+   *                       null
+   * @param joinConditions The join condition
+   * @return The join, or null if no index can be used
+   */
+  private JoinOperator getIndexJoin(Operator leftop, String rightTable, ArrayList<String> leftTables,
+      HashMap<String, String> aliases, BufferedWriter writer, Expression rightExp, Expression joinConditions)
+      throws IOException {
+    DatabaseCatalog catalog = DatabaseCatalog.getInstance();
+    String base = aliases.get(rightTable);
+    if ("off".equals(catalog.getSetting("index_join", base))) {
+      return null;
+    }
+    int pages = catalog.getIntSetting("index_join_batch_pages", 16);
+    for (Column[] cols : getJoinColumns(joinConditions, rightTable, leftTables)) {
+      IndexInfo best = null;
+      for (IndexInfo index : catalog.getIndexes(base)) {
+        if (index.getColumn().equals(cols[1].getColumnName()) && (best == null || index.isHash())) {
+          best = index;
+        }
+      }
+      if (best != null) {
+        IndexScanOperator scan = new IndexScanOperator(rightTable, aliases, writer, best, 1, 0);
+        Operator rightop = rightExp == null ? scan : new SelectOperator(rightExp, scan);
+        return new IndexNestedLoopJoinOperator(leftop, rightop, joinConditions, scan, cols[0], pages);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Lets the join drop left tuples early if a column of the right table in an
+   * equi-join condition has a Bloom filter.
+   * 
+   * @param join           The join
+   * @param rightTable     The name (or alias) of the right table
+   * @param leftTables     The names (or aliases) of the tables on the left
+   * @param aliases        The HashMap of aliases of the tables in the query
+   * @param joinConditions The join condition
+   */
+  private void addBloomFilter(JoinOperator join, String rightTable, ArrayList<String> leftTables,
+      HashMap<String, String> aliases, Expression joinConditions) {
+    DatabaseCatalog catalog = DatabaseCatalog.getInstance();
+    for (Column[] cols : getJoinColumns(joinConditions, rightTable, leftTables)) {
+      BloomFilter filter = catalog.getBloomFilter(aliases.get(rightTable), cols[1].getColumnName());
+      if (filter != null) {
+        join.setBloomFilter(filter, cols[0]);
+        return;
+      }
+    }
+  }
+
+  /**
+   * @param joinConditions The join condition
+   * @param rightTable     The name (or alias) of the right table
+   * @param leftTables     The names (or aliases) of the tables on the left
+   * @return The pairs of columns that a conjunct of the condition equates, as
+   *         {left column, right column}
+   */
+  private ArrayList<Column[]> getJoinColumns(Expression joinConditions, String rightTable,
+      ArrayList<String> leftTables) {
+    ArrayList<Column[]> pairs = new ArrayList<Column[]>();
+    for (Expression conjunct : WhereVisitor.getConjuncts(joinConditions)) {
+      if (!(conjunct instanceof EqualsTo)) {
+        continue;
+      }
+      EqualsTo eq = (EqualsTo) conjunct;
+      if (!(eq.getLeftExpression() instanceof Column) || !(eq.getRightExpression() instanceof Column)) {
+        continue;
+      }
+      Column a = (Column) eq.getLeftExpression();
+      Column b = (Column) eq.getRightExpression();
+      if (a.getTable() == null || b.getTable() == null) {
+        continue;
+      }
+      if (rightTable.equals(a.getTable().getName())) {
+        Column c = a;
+        a = b;
+        b = c;
+      }
+      if (rightTable.equals(b.getTable().getName()) && leftTables.contains(a.getTable().getName())) {
+        pairs.add(new Column[] { a, b });
+      }
+    }
+    return pairs;
+  }
+
+  /**
+   * Finds the columns of every table that the select list, the WHERE clause and
+   * the ORDER BY reference, so that scans of columnar tables only read those
+   * columns. A column that is not qualified by a table is kept for every table.
+   * 
+   * @param body   The body of the query
+   * @param tables The names (or aliases) of the tables in the FROM clause
+   * @return A HashMap from table name to referenced column names, with no
+   *         entries when the query selects every column
+   */
+  private HashMap<String, HashSet<String>> getRequiredColumns(PlainSelect body, ArrayList<String> tables) {
+    HashMap<String, HashSet<String>> required = new HashMap<String, HashSet<String>>();
+    List<SelectItem> itemList = getSelectItems(body);
+    if (itemList.get(0) instanceof AllColumns) {
+      return required;
+    }
+    ArrayList<Column> columns = new ArrayList<Column>();
+    for (SelectItem i : itemList) {
+      columns.add((Column) ((SelectExpressionItem) i).getExpression());
+    }
+    if (body.getWhere() != null) {
+      WhereVisitor w = new WhereVisitor(tables);
+      body.getWhere().accept(w);
+      columns.addAll(w.getColumns());
+    }
+    List<OrderByElement> orderBy = getOrderByElements(body);
+    if (orderBy != null) {
+      for (OrderByElement o : orderBy) {
+        columns.add((Column) o.getExpression());
+      }
+    }
+    for (String table : tables) {
+      required.put(table, new HashSet<String>());
+    }
+    for (Column c : columns) {
+      String table = c.getTable() == null ? null : c.getTable().getName();
+      if (table != null && required.containsKey(table)) {
+        required.get(table).add(c.getColumnName());
+      } else {
+        for (HashSet<String> cols : required.values()) {
+          cols.add(c.getColumnName());
+        }
+      }
+    }
+    return required;
+  }
+
+  /**
+   * @param body The body of a query
+   * @return The items of its select list; the parser returns them as a raw List
+   */
+  @SuppressWarnings("unchecked")
+  private static List<SelectItem> getSelectItems(PlainSelect body) {
+    return body.getSelectItems();
+  }
+
+  /**
+   * @param body The body of a query
+   * @return The elements of its ORDER BY, or null if it has none; the parser
+   *         returns them as a raw List
+   */
+  @SuppressWarnings("unchecked")
+  private static List<OrderByElement> getOrderByElements(PlainSelect body) {
+    return body.getOrderByElements();
+  }
 }
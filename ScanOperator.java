@@ -1,23 +1,22 @@
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.*;
 import java.io.BufferedWriter;
 
 /**
  * ScanOperator implements a full scan of the table for the "SELECT * FROM..."
- * query. It reads the wanted table from the text file and its schema, and has a
- * getNextTuple method that creates and returns a new Tuple for each line.
+ * query. It reads the wanted table through a TupleReader matching the format
+ * recorded in the catalog, and has a getNextTuple method that returns a new
+ * Tuple for each row of the table.
  */
 public class ScanOperator extends Operator {
 
     File file;
-    BufferedReader br;
+    TupleReader reader;
     ArrayList<String> schema;
     DatabaseCatalog catalog;
     String tableName;
+    String baseTable;
     BufferedWriter writer;
 
     /**
@@ -30,13 +29,46 @@ public class ScanOperator extends Operator {
      * @return a ScanOperator instance (this is a constructor)
      */
     public ScanOperator(String tbName, HashMap<String, String> aliases, BufferedWriter w) throws IOException {
+        this(tbName, aliases, w, null);
+    }
+
+    /**
+     * Constructor for the ScanOperator class that only reads the given columns
+     * when the table is stored in the columnar format. Tables in other formats
+     * are always read whole.
+     * 
+     * @param tbName  The name of the table (As String) to be scanned
+     * @param aliases The HashMap of alises (as Strings) of the table to be scanned,
+     *                including the name itself as alias
+     * @param w       The BufferedWriter to be used to write the output
+     * @param columns The names of the columns the query references, or null if
+     *                every column is needed
+     * @return a ScanOperator instance (this is a constructor)
+     */
+    public ScanOperator(String tbName, HashMap<String, String> aliases, BufferedWriter w, HashSet<String> columns)
+            throws IOException {
         catalog = DatabaseCatalog.getInstance();
         String pathName = aliases.get(tbName);
         String filePath = catalog.getTbPath(pathName);
         schema = catalog.getSchema(pathName);
+        if (columns != null && catalog.isColumnar(pathName)) {
+            // Keep the referenced columns in schema order, but always read at
+            // least one column so the scan still produces one tuple per row
+            ArrayList<String> needed = new ArrayList<String>();
+            for (String col : schema) {
+                if (columns.contains(col)) {
+                    needed.add(col);
+                }
+            }
+            if (needed.isEmpty()) {
+                needed.add(schema.get(0));
+            }
+            schema = needed;
+        }
         file = new File(filePath);
-        br = new BufferedReader(new FileReader(file));
+        reader = catalog.getTupleReader(pathName, schema);
         tableName = tbName;
+        baseTable = pathName;
         writer = w;
     }
 
@@ -59,30 +91,72 @@ public class ScanOperator extends Operator {
         return tableName;
     }
 
+    /**
+     * Gets the name of the table in the catalog, which differs from the name
+     * passed into the constructor when that is an alias
+     * 
+     * @return The name of the scanned table in the catalog
+     */
+    public String getBaseTable() {
+        return baseTable;
+    }
+
+    /**
+     * Restricts the scan to the pages holding the given rows, and resets it.
+     * 
+     * @param ranges Sorted, disjoint [start, end) intervals of row numbers
+     */
+    public void setCandidateRows(long[][] ranges) {
+        try {
+            reader.setCandidateRows(ranges);
+        } catch (IOException e) {
+            System.out.println(e);
+        }
+    }
+
+    /**
+     * Makes the scan skip the rows whose value in a column a runtime join filter
+     * rules out. Filters on columns the scan does not read are ignored.
+     * 
+     * @param column The name of the column
+     * @param f      The filter
+     */
+    public void addJoinFilter(String column, JoinFilter f) {
+        int i = schema.indexOf(column);
+        if (i != -1) {
+            reader.addJoinFilter(i, f);
+        }
+    }
+
     /**
      * Resets to the beginning of the table by reading from the beginning of the
      * data file.
      */
     public void reset() {
         try {
-            br = new BufferedReader(new FileReader(file));
-        } catch (FileNotFoundException e) {
+            reader.reset();
+        } catch (IOException e) {
+            System.out.println(e);
+        }
+    }
+
+    /** Closes the reader of the data file. */
+    public void close() {
+        try {
+            reader.close();
+        } catch (IOException e) {
             System.out.println(e);
         }
     }
 
     /**
-     * Reads the next line in the data file to create a new Tuple and returns it.
+     * Reads the next row in the data file to create a new Tuple and returns it.
      * 
      * @return The next tuple in the table
      */
     public Tuple getNextTuple() {
         try {
-            String line = br.readLine();
-            if (line != null) {
-                return new Tuple(line);
-            } else
-                return null;
+            return reader.readNextTuple();
         } catch (IOException e) {
             System.out.println(e);
             return null;
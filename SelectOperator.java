@@ -11,6 +11,10 @@ import java.io.BufferedWriter;
 /**
  * SelectOperator handles queries with the WHERE clause by evaluation the
  * expression for each tuple. It outputs tuples that satisfy the WHERE clause.
+ * If the table has zone maps, the pages whose min and max show that none of
+ * their tuples can satisfy the comparisons with constants are never read. If a
+ * column compared for equality with a constant has a Bloom filter that does not
+ * contain the constant, the table is not read at all.
  */
 public class SelectOperator extends Operator {
 
@@ -20,6 +24,8 @@ public class SelectOperator extends Operator {
   ArrayList<String> schema;
   ExpVisitor vis;
   String tableName;
+  // true when a Bloom filter shows that no tuple can match
+  boolean pruned;
 
   /**
    * Constructor for the SelectOperator class visits the Expression from the WHERE
@@ -41,6 +47,23 @@ public class SelectOperator extends Operator {
     vis = new ExpVisitor();
     vis.setSchema(schema);
     tableName = s.getTableName();
+
+    ArrayList<ColumnRange> ranges = ColumnRange.getRanges(exp);
+    for (ColumnRange range : ranges) {
+      if (range.getLow() == range.getHigh()) {
+        BloomFilter filter = catalog.getBloomFilter(scanner.getBaseTable(), range.getColumn().getColumnName());
+        if (filter != null && !filter.mightContain(range.getLow())) {
+          pruned = true;
+          return;
+        }
+      }
+    }
+
+    // Let the scan skip the pages the zone maps show cannot match
+    long[][] rows = ZoneMap.getCandidateRows(scanner.getBaseTable(), ranges);
+    if (rows != null) {
+      scanner.setCandidateRows(rows);
+    }
   }
 
   /**
@@ -51,6 +74,11 @@ public class SelectOperator extends Operator {
     scanner.reset();
   }
 
+  /** Closes the scan */
+  public void close() {
+    scanner.close();
+  }
+
   /**
    * @return an ArrayList<String>, each of which are the names of the Columns,
    *         ordered to show their place in a row of the table.
@@ -76,6 +104,9 @@ public class SelectOperator extends Operator {
    * @return The next tuple in the result of the SELECT query
    */
   public Tuple getNextTuple() {
+    if (pruned) {
+      return null;
+    }
     Tuple t = scanner.getNextTuple();
     if (exp != null) {
       while (t != null) {
@@ -0,0 +1,218 @@
+import java.util.*;
+import net.sf.jsqlparser.expression.*;
+import net.sf.jsqlparser.schema.*;
+
+/**
+ * SortMergeJoinOperator joins its children on the columns that the equalities
+ * of the join condition equate between them. Each child is sorted on its join
+ * key by a SortOperator, then the two sorted streams are merged: the smaller
+ * key is skipped until the keys are equal, and the right tuples sharing that
+ * key are buffered so that every left tuple with the key can be paired with all
+ * of them. The conjuncts that are not key equalities are evaluated on each
+ * pair. Identical left tuples are read as one group and each pair is returned
+ * once per copy, so that equal output tuples stay next to each other.
+ * 
+ * The output is sorted on the join key, then on the other left columns and then
+ * the other right columns, so QueryPlanner can leave out a SortOperator for an
+ * ORDER BY that asks for the same order.
+ */
+public class SortMergeJoinOperator extends JoinOperator {
+
+  int[] leftKeys;
+  int[] rightKeys;
+  Expression residual;
+  Tuple rightTuple;
+  // The right tuples whose key equals the key of the current left tuple
+  ArrayList<Tuple> partition = new ArrayList<Tuple>();
+  int match;
+  // The number of copies of the current left tuple, the first tuple after them
+  // and the last pair returned, with how many more times it is to be returned
+  int copies;
+  Tuple nextLeft;
+  Tuple pair;
+  int repeats;
+
+  /**
+   * Constructor for the SortMergeJoinOperator class.
+   * 
+   * @param l The left child operator
+   * @param r The right child operator
+   * @param e The join condition, with at least one equality of a left and a
+   *          right column
+   * @return a SortMergeJoinOperator instance
+   */
+  public SortMergeJoinOperator(Operator l, Operator r, Expression e) {
+    super(l, r, e);
+    int[][] keys = getJoinKeys();
+    leftKeys = keys[0];
+    rightKeys = keys[1];
+    residual = getResidual();
+    // The join read the first left tuple before the children were sorted
+    l.reset();
+    left = new SortOperator(SortOperator.getColumns(leftSchema, leftKeys), l);
+    right = new SortOperator(SortOperator.getColumns(rightSchema, rightKeys), r);
+    nextLeft = left.getNextTuple();
+    readLeftGroup();
+    rightTuple = right.getNextTuple();
+  }
+
+  /**
+   * Makes the first tuple after the current left group the left tuple and
+   * counts how many times it is repeated.
+   */
+  private void readLeftGroup() {
+    leftTuple = nextLeft;
+    copies = 1;
+    nextLeft = nextLeftTuple();
+    while (leftTuple != null && leftTuple.equals(nextLeft)) {
+      copies++;
+      nextLeft = nextLeftTuple();
+    }
+  }
+
+  /**
+   * Drops the left tuples whose value in a column is not in a Bloom filter of
+   * the right table. The sorted left child is read again from its start, as
+   * the current left group and the tuple after it were read without the
+   * filter.
+   *
+   * @param f     The Bloom filter of the join column of the right table
+   * @param outer The column of the left child that must equal that column
+   */
+  public void setBloomFilter(BloomFilter f, Column outer) {
+    super.setBloomFilter(f, outer);
+    reset();
+  }
+
+  /**
+   * The right child is read once, so it is never materialized.
+   */
+  void prepareInner() {
+  }
+
+  /**
+   * @return A negative number, zero or a positive number as the key of the left
+   *         tuple is smaller than, equal to or larger than the key of the right
+   *         tuple
+   */
+  private int compareKeys(Tuple l, Tuple r) {
+    for (int i = 0; i < leftKeys.length; i++) {
+      int x = l.getColumn(leftKeys[i]);
+      int y = r.getColumn(rightKeys[i]);
+      if (x != y) {
+        return x < y ? -1 : 1;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * @return The next combined tuple whose keys are equal and that satisfies the
+   *         rest of the join condition
+   */
+  public Tuple getNextTuple() {
+    while (true) {
+      if (repeats > 0) {
+        repeats--;
+        return pair;
+      }
+      while (match < partition.size()) {
+        Tuple newOne = leftTuple.combine(partition.get(match++));
+        if (residual != null) {
+          vis.setTuple(newOne);
+          residual.accept(vis);
+        }
+        if (residual == null || vis.getOutcome()) {
+          pair = newOne;
+          repeats = copies - 1;
+          return newOne;
+        }
+      }
+      if (!partition.isEmpty()) {
+        // Pair the next left group with the same partition if it has the key
+        readLeftGroup();
+        match = 0;
+        if (leftTuple != null && compareKeys(leftTuple, partition.get(0)) == 0) {
+          continue;
+        }
+        partition.clear();
+      }
+      if (leftTuple == null || rightTuple == null) {
+        return null;
+      }
+      int c = compareKeys(leftTuple, rightTuple);
+      if (c < 0) {
+        readLeftGroup();
+      } else if (c > 0) {
+        rightTuple = right.getNextTuple();
+      } else {
+        while (rightTuple != null && compareKeys(leftTuple, rightTuple) == 0) {
+          partition.add(rightTuple);
+          rightTuple = right.getNextTuple();
+        }
+        match = 0;
+      }
+    }
+  }
+
+  /** Reset to the first tuples of both sorted children */
+  public void reset() {
+    left.reset();
+    right.reset();
+    nextLeft = nextLeftTuple();
+    readLeftGroup();
+    rightTuple = right.getNextTuple();
+    partition.clear();
+    match = 0;
+    repeats = 0;
+  }
+
+  /**
+   * Checks whether the output, after being projected to a schema, is already
+   * in the order a SortOperator on the schema would produce: sorted on the
+   * ORDER BY columns, then on the other columns of the schema in order. The
+   * columns equated by the join are interchangeable, and columns that are
+   * projected away must only follow the projected ones in the output order.
+   * 
+   * @param orderBy The columns of the ORDER BY
+   * @param schema  The schema the output is projected to
+   * @return true if a SortOperator on the projected output can be left out
+   */
+  public boolean isSortedOn(ArrayList<Column> orderBy, ArrayList<String> schema) {
+    // Name every equated right key column after its left column
+    HashMap<String, String> same = new HashMap<String, String>();
+    for (int i = 0; i < rightKeys.length; i++) {
+      same.put(newSchema.get(leftSchema.size() + rightKeys[i]), newSchema.get(leftKeys[i]));
+    }
+
+    // The order of the output: the keys, the other left columns, the other
+    // right columns
+    ArrayList<String> produced = new ArrayList<String>();
+    for (int k : leftKeys) {
+      addOnce(produced, newSchema.get(k), same);
+    }
+    for (String col : newSchema) {
+      addOnce(produced, col, same);
+    }
+
+    ArrayList<String> wanted = new ArrayList<String>();
+    for (Column c : orderBy) {
+      addOnce(wanted, c.getWholeColumnName(), same);
+    }
+    for (String col : schema) {
+      addOnce(wanted, col, same);
+    }
+    return wanted.size() <= produced.size() && produced.subList(0, wanted.size()).equals(wanted);
+  }
+
+  /**
+   * Adds a column to an ordering unless it, or a column equated to it, is
+   * already there.
+   */
+  private static void addOnce(ArrayList<String> order, String col, HashMap<String, String> same) {
+    String name = same.containsKey(col) ? same.get(col) : col;
+    if (!order.contains(name)) {
+      order.add(name);
+    }
+  }
+}
@@ -0,0 +1,109 @@
+import java.util.*;
+import net.sf.jsqlparser.expression.operators.relational.*;
+import net.sf.jsqlparser.schema.*;
+
+/**
+ * SortMergeJoinOperatorTest checks the output of a SortMergeJoinOperator on
+ * small generated inputs, including when a Bloom filter of the right table is
+ * set after the join has read its first tuples, as QueryPlanner does. It exits
+ * with status 1 if a check fails.
+ *
+ * Usage: SortMergeJoinOperatorTest
+ */
+public class SortMergeJoinOperatorTest {
+
+  /** An operator returning a fixed list of tuples */
+  static class ListOperator extends Operator {
+    ArrayList<String> schema;
+    int[][] rows;
+    int ind;
+
+    ListOperator(ArrayList<String> schema, int[][] rows) {
+      this.schema = schema;
+      this.rows = rows;
+    }
+
+    Tuple getNextTuple() {
+      return ind < rows.length ? new Tuple(rows[ind++].clone()) : null;
+    }
+
+    void reset() {
+      ind = 0;
+    }
+
+    ArrayList<String> getSchema() {
+      return schema;
+    }
+  }
+
+  static int failures;
+
+  static void check(boolean ok, String what) {
+    System.out.println((ok ? "ok    " : "FAIL  ") + what);
+    if (!ok) {
+      failures++;
+    }
+  }
+
+  static Column column(String table, String name) {
+    Table t = new Table();
+    t.setName(table);
+    Column c = new Column();
+    c.setTable(t);
+    c.setColumnName(name);
+    return c;
+  }
+
+  /**
+   * @return The join of A(A1, A2) and B(B1, B2) on A.A1 = B.B1
+   */
+  static SortMergeJoinOperator join(int[][] a, int[][] b) {
+    EqualsTo eq = new EqualsTo();
+    eq.setLeftExpression(column("A", "A1"));
+    eq.setRightExpression(column("B", "B1"));
+    return new SortMergeJoinOperator(new ListOperator(new ArrayList<String>(Arrays.asList("A.A1", "A.A2")), a),
+        new ListOperator(new ArrayList<String>(Arrays.asList("B.B1", "B.B2")), b), eq);
+  }
+
+  static String output(Operator op) {
+    StringBuilder out = new StringBuilder();
+    Tuple t = op.getNextTuple();
+    while (t != null) {
+      out.append(t).append(';');
+      t = op.getNextTuple();
+    }
+    return out.toString();
+  }
+
+  public static void main(String[] args) {
+    int[][] a = { { 3, 30 }, { 1, 10 }, { 2, 20 }, { 2, 20 } };
+    int[][] b = { { 3, 300 }, { 2, 200 }, { 4, 400 } };
+    String expected = "2,20,2,200;2,20,2,200;3,30,3,300;";
+
+    SortMergeJoinOperator join = join(a, b);
+    check(output(join).equals(expected), "equal keys are joined in key order");
+    join.reset();
+    check(output(join).equals(expected), "a reset returns the same tuples again");
+
+    BloomFilter filter = new BloomFilter(1 << 16, 3);
+    filter.add(2);
+    filter.add(3);
+    filter.add(4);
+    if (filter.mightContain(1)) {
+      System.out.println("skip  the Bloom filter happens to contain 1");
+    } else {
+      join = join(new int[][] { { 1, 10 }, { 2, 20 }, { 3, 30 } }, new int[][] { { 2, 200 }, { 3, 300 } });
+      join.setBloomFilter(filter, column("A", "A1"));
+      check(output(join).equals("2,20,2,200;3,30,3,300;"),
+          "setting a Bloom filter after the first left tuples were read loses no tuples");
+
+      join = join(a, b);
+      join.setBloomFilter(filter, column("A", "A1"));
+      check(output(join).equals(expected), "a Bloom filter keeps copies of a left tuple together");
+    }
+
+    if (failures > 0) {
+      System.exit(1);
+    }
+  }
+}
@@ -6,9 +6,20 @@ import java.io.*;
  * SortOperator handles queries with the ORDER BY clause. It sorts the output
  * tuples according to the ORDER BY specification and outputs the sorted tuples
  * in ascending order.
+ *
+ * At most "sort_buffer_pages" pages of tuples are held in memory. If the child
+ * has more, it is sorted externally: every buffer full of tuples is sorted and
+ * written to a temporary binary run file, and the runs are merged with a heap
+ * of the first tuple of every run, one page of each being read at a time. When
+ * there are more runs than one page less than the buffer, groups of runs are
+ * first merged into longer runs until there are few enough. Tuples that
+ * compare equal keep the order of the child, as in an in-memory sort. The runs
+ * of the final merge are kept for resets until the operator is closed.
  */
 public class SortOperator extends Operator {
 
+  static final int DEFAULT_BUFFER_PAGES = 1024;
+
   ArrayList<Column> columns;
   Operator op;
   ArrayList<String> schema;
@@ -17,6 +28,16 @@ public class SortOperator extends Operator {
   int ind;
   String tbName = "";
 
+  // The number of tuples in the buffer and of runs merged at once
+  int capacity;
+  int fanIn;
+  // The runs of an external sort, null if the tuples fit in the buffer, and
+  // the readers, current tuples and heap of the final merge
+  ArrayList<File> runs;
+  TupleReader[] readers;
+  Tuple[] heads;
+  PriorityQueue<Integer> heap;
+
   /**
    * Constructor for the SortOperator class.
    * 
@@ -32,6 +53,53 @@ public class SortOperator extends Operator {
     schema = op.getSchema();
     ind = 0;
 
+    addRemainingColumns(columns, schema);
+
+    // Sort the tuples with Collections.sort and the OrderByComparator, a
+    // buffer full at a time if there are more than fit in it
+    comp = new OrderByComparator(columns, schema);
+    int pages = Math.max(DatabaseCatalog.getInstance().getIntSetting("sort_buffer_pages", DEFAULT_BUFFER_PAGES), 3);
+    capacity = pages * BinaryTupleReader.getCapacity(schema.size());
+    fanIn = pages - 1;
+    try {
+      Tuple t = op.getNextTuple();
+      while (t != null) {
+        if (tuples.size() == capacity) {
+          writeRun();
+        }
+        tuples.add(t);
+        t = op.getNextTuple();
+      }
+      if (runs == null) {
+        Collections.sort(tuples, comp);
+      } else {
+        writeRun();
+        while (runs.size() > fanIn) {
+          ArrayList<File> merged = new ArrayList<File>();
+          for (int i = 0; i < runs.size(); i += fanIn) {
+            merged.add(mergeRuns(runs.subList(i, Math.min(i + fanIn, runs.size()))));
+          }
+          runs = merged;
+        }
+        readers = new TupleReader[runs.size()];
+        for (int i = 0; i < runs.size(); i++) {
+          readers[i] = new BinaryTupleReader(runs.get(i));
+        }
+        startMerge();
+      }
+    } catch (IOException e) {
+      System.out.println(e);
+    }
+  }
+
+  /**
+   * Adds every column of the schema that is not yet among the columns to be
+   * sorted by to their end, so that tuples are sorted on all their columns.
+   * 
+   * @param columns The names of the columns to be sorted by
+   * @param schema  The schema of the tuples to be sorted
+   */
+  static void addRemainingColumns(ArrayList<Column> columns, ArrayList<String> schema) {
     // Create arraylists containing possible ways to name the columns
     ArrayList<String> shortColNames = new ArrayList<String>();
     ArrayList<String> wholeColNames = new ArrayList<String>();
@@ -67,23 +135,129 @@ public class SortOperator extends Operator {
         }
       }
     }
+  }
 
-    // Get the list of tuples and sort using Collections.sort with the
-    // OrderByComparator
-    comp = new OrderByComparator(columns, schema);
-    Tuple t = op.getNextTuple();
-    while (t != null) {
-      tuples.add(t);
-      t = op.getNextTuple();
+  /**
+   * @param schema The schema of a child
+   * @param keys   The positions of its key columns
+   * @return The key columns, to sort the child by
+   */
+  static ArrayList<Column> getColumns(ArrayList<String> schema, int[] keys) {
+    ArrayList<Column> columns = new ArrayList<Column>();
+    for (int k : keys) {
+      Column c = new Column();
+      c.setTable(new Table());
+      c.setColumnName(schema.get(k));
+      columns.add(c);
+    }
+    return columns;
+  }
+
+  /**
+   * Sorts the tuples in the buffer, writes them to a new run file and empties
+   * the buffer.
+   */
+  private void writeRun() throws IOException {
+    if (runs == null) {
+      runs = new ArrayList<File>();
     }
     Collections.sort(tuples, comp);
+    File run = DatabaseCatalog.getInstance().createTempFile("sort");
+    TupleWriter writer = new BinaryTupleWriter(run);
+    for (Tuple t : tuples) {
+      writer.writeTuple(t);
+    }
+    writer.close();
+    tuples.clear();
+    runs.add(run);
+  }
+
+  /**
+   * Merges runs into one longer run and removes them.
+   *
+   * @param group The run files, in the order the child produced their tuples
+   * @return The merged run file
+   */
+  private File mergeRuns(List<File> group) throws IOException {
+    TupleReader[] in = new TupleReader[group.size()];
+    Tuple[] first = new Tuple[group.size()];
+    PriorityQueue<Integer> queue = newHeap(first);
+    for (int i = 0; i < in.length; i++) {
+      in[i] = new BinaryTupleReader(group.get(i));
+      first[i] = in[i].readNextTuple();
+      if (first[i] != null) {
+        queue.add(i);
+      }
+    }
+    File run = DatabaseCatalog.getInstance().createTempFile("sort");
+    TupleWriter writer = new BinaryTupleWriter(run);
+    while (!queue.isEmpty()) {
+      int i = queue.poll();
+      writer.writeTuple(first[i]);
+      first[i] = in[i].readNextTuple();
+      if (first[i] != null) {
+        queue.add(i);
+      }
+    }
+    writer.close();
+    for (int i = 0; i < in.length; i++) {
+      in[i].close();
+      group.get(i).delete();
+    }
+    return run;
   }
 
   /**
-   * @return The next tuple in the order it has been sorted by incrementing the
-   *         index
+   * @param first The current tuple of every run
+   * @return An empty heap of runs, ordered by their current tuples and then by
+   *         the order of the runs, so equal tuples keep the order of the child
+   */
+  private PriorityQueue<Integer> newHeap(final Tuple[] first) {
+    return new PriorityQueue<Integer>(Math.max(first.length, 1), new Comparator<Integer>() {
+      public int compare(Integer a, Integer b) {
+        int c = comp.compare(first[a], first[b]);
+        return c != 0 ? c : a - b;
+      }
+    });
+  }
+
+  /**
+   * Reads the first tuple of every run of the final merge into the heap.
+   */
+  private void startMerge() throws IOException {
+    heads = new Tuple[readers.length];
+    heap = newHeap(heads);
+    for (int i = 0; i < readers.length; i++) {
+      heads[i] = readers[i].readNextTuple();
+      if (heads[i] != null) {
+        heap.add(i);
+      }
+    }
+  }
+
+  /**
+   * @return The next tuple in the order it has been sorted, from the buffer by
+   *         incrementing the index, or else from the run with the smallest
+   *         current tuple
    */
   public Tuple getNextTuple() {
+    if (runs != null) {
+      if (heap == null || heap.isEmpty()) {
+        return null;
+      }
+      try {
+        int i = heap.poll();
+        Tuple m = heads[i];
+        heads[i] = readers[i].readNextTuple();
+        if (heads[i] != null) {
+          heap.add(i);
+        }
+        return m;
+      } catch (IOException e) {
+        System.out.println(e);
+        return null;
+      }
+    }
     if (ind >= tuples.size()) {
       return null;
     } else {
@@ -93,9 +267,41 @@ public class SortOperator extends Operator {
     }
   }
 
-  /** Reset to the first tuple by setting the index to 0 */
+  /**
+   * Reset to the first tuple by setting the index to 0, or by restarting the
+   * final merge from the start of its runs
+   */
   public void reset() {
     ind = 0;
+    if (readers != null) {
+      try {
+        for (TupleReader r : readers) {
+          r.reset();
+        }
+        startMerge();
+      } catch (IOException e) {
+        System.out.println(e);
+      }
+    }
+  }
+
+  /** Closes the child, and the readers of the final merge and removes its runs */
+  public void close() {
+    op.close();
+    if (readers != null) {
+      try {
+        for (TupleReader r : readers) {
+          r.close();
+        }
+      } catch (IOException e) {
+        System.out.println(e);
+      }
+      for (File run : runs) {
+        run.delete();
+      }
+      readers = null;
+      heap = null;
+    }
   }
 
   /**
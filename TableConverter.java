@@ -0,0 +1,79 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * TableConverter rewrites tables from the text format in db/data into the
+ * binary page format or the columnar format and records the new format in
+ * config.txt, so that ScanOperator reads them through the matching TupleReader
+ * from then on. The text files are left in place, so tables in different
+ * formats can coexist.
+ * 
+ * Usage: java TableConverter inputdir [-format binary|columnar] [table ...]
+ * 
+ * The default format is binary. If no tables are given every table in
+ * schema.txt is converted.
+ */
+public class TableConverter {
+
+  /**
+   * @param args The input directory, optionally the format, followed by the
+   *             tables to convert
+   */
+  public static void main(String[] args) {
+    DatabaseCatalog catalog = DatabaseCatalog.getInstance();
+    catalog.fillCatalogHash(args[0]);
+
+    String format = "binary";
+    ArrayList<String> tables = new ArrayList<String>();
+    for (int i = 1; i < args.length; i++) {
+      if (args[i].equals("-format") && i + 1 < args.length) {
+        format = args[++i];
+      } else {
+        tables.add(args[i]);
+      }
+    }
+    if (tables.isEmpty()) {
+      tables.addAll(catalog.getTableNames());
+    }
+    for (String table : tables) {
+      try {
+        int rows = convert(table, format);
+        System.out.println("Converted " + table + " (" + rows + " tuples)");
+      } catch (IOException e) {
+        System.out.println(e);
+      }
+    }
+  }
+
+  /**
+   * Copies the text data file of the table into the given format and records
+   * the format in the catalog.
+   * 
+   * @param tbName The table to be converted
+   * @param format The format to be written
+   * @return The number of tuples written
+   */
+  public static int convert(String tbName, String format) throws IOException {
+    DatabaseCatalog catalog = DatabaseCatalog.getInstance();
+    TupleReader reader = new TextTupleReader(new File(catalog.getDataPath(tbName, "text")));
+    File file = new File(catalog.getDataPath(tbName, format));
+    TupleWriter writer;
+    if (format.equals("columnar")) {
+      writer = new ColumnarTupleWriter(file, catalog.getSchema(tbName));
+    } else {
+      writer = new BinaryTupleWriter(file, true);
+    }
+    int rows = 0;
+    Tuple t = reader.readNextTuple();
+    while (t != null) {
+      writer.writeTuple(t);
+      rows++;
+      t = reader.readNextTuple();
+    }
+    reader.close();
+    writer.close();
+    catalog.saveSetting("format", tbName, format);
+    return rows;
+  }
+}
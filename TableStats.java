@@ -0,0 +1,128 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * TableStats holds the statistics ANALYZE collects for one table: the number
+ * of rows, the number of pages and the size in bytes of its data, and a
+ * ColumnStats per column. The statistics of all tables are kept in stats.txt
+ * next to schema.txt, one line per table followed by one line per column:
+ * 
+ * Sailors 300 1 2468
+ * 
+ * Sailors.A 0 6 7 0 0 1 ...
+ */
+public class TableStats {
+
+  String table;
+  long rows;
+  long pages;
+  long bytes;
+  LinkedHashMap<String, ColumnStats> columns = new LinkedHashMap<String, ColumnStats>();
+
+  /**
+   * Constructor for the TableStats class.
+   * 
+   * @param tbName The name of the table
+   * @param r      The number of rows
+   * @param p      The number of pages of data
+   * @param b      The size of the data in bytes
+   * @return a TableStats instance without column statistics
+   */
+  public TableStats(String tbName, long r, long p, long b) {
+    table = tbName;
+    rows = r;
+    pages = p;
+    bytes = b;
+  }
+
+  /** @return The name of the table */
+  public String getTable() {
+    return table;
+  }
+
+  /** @return The number of rows in the table */
+  public long getRowCount() {
+    return rows;
+  }
+
+  /** @return The number of pages of data */
+  public long getPageCount() {
+    return pages;
+  }
+
+  /** @return The size of the data in bytes */
+  public long getFileSize() {
+    return bytes;
+  }
+
+  /**
+   * @param column The name of a column
+   * @param stats  The statistics of the column
+   */
+  public void putColumn(String column, ColumnStats stats) {
+    columns.put(column, stats);
+  }
+
+  /**
+   * @param column The name of a column, without the table name
+   * @return The statistics of the column, or null if there are none
+   */
+  public ColumnStats getColumn(String column) {
+    return columns.get(column);
+  }
+
+  /**
+   * Writes the statistics of the tables to a stats file.
+   * 
+   * @param file  The file to be written
+   * @param stats The statistics of every table, by table name
+   */
+  public static void write(File file, Map<String, TableStats> stats) throws IOException {
+    BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+    for (TableStats t : stats.values()) {
+      writer.write(t.table + " " + t.rows + " " + t.pages + " " + t.bytes);
+      writer.newLine();
+      for (Map.Entry<String, ColumnStats> c : t.columns.entrySet()) {
+        writer.write(t.table + "." + c.getKey() + " " + c.getValue());
+        writer.newLine();
+      }
+    }
+    writer.close();
+  }
+
+  /**
+   * Reads the statistics of the tables from a stats file.
+   * 
+   * @param file The file written by write
+   * @return The statistics of every table in the file, by table name, or an
+   *         empty HashMap if there is no such file
+   */
+  public static HashMap<String, TableStats> read(File file) throws IOException {
+    HashMap<String, TableStats> stats = new LinkedHashMap<String, TableStats>();
+    if (!file.exists()) {
+      return stats;
+    }
+    BufferedReader reader = new BufferedReader(new FileReader(file));
+    String st;
+    while ((st = reader.readLine()) != null) {
+      String[] fields = st.split(" ");
+      int dot = fields[0].indexOf('.');
+      if (dot == -1) {
+        stats.put(fields[0], new TableStats(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+            Long.parseLong(fields[3])));
+      } else {
+        TableStats t = stats.get(fields[0].substring(0, dot));
+        if (t != null) {
+          t.putColumn(fields[0].substring(dot + 1), ColumnStats.parse(Arrays.copyOfRange(fields, 1, fields.length)));
+        }
+      }
+    }
+    reader.close();
+    return stats;
+  }
+}
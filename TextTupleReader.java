@@ -0,0 +1,79 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * TextTupleReader reads a table stored in the human readable format, where
+ * every line of the file is one tuple of comma separated integers. The bytes
+ * of the file are decoded by a CsvIntDecoder, so no Strings are created while
+ * scanning.
+ */
+public class TextTupleReader implements TupleReader {
+
+  File file;
+  FileChannel channel;
+  CsvIntDecoder decoder;
+  JoinFilters joinFilters = new JoinFilters();
+
+  /**
+   * Constructor for the TextTupleReader class.
+   * 
+   * @param f The text file to be read
+   * @return a TextTupleReader instance
+   */
+  public TextTupleReader(File f) throws IOException {
+    file = f;
+    channel = new FileInputStream(file).getChannel();
+    decoder = new CsvIntDecoder(file.getPath(), channel);
+  }
+
+  /**
+   * Decodes the next line in the file to create a new Tuple and returns it.
+   * 
+   * @return The next tuple in the file, or null at the end of the file
+   */
+  public Tuple readNextTuple() throws IOException {
+    int columns = decoder.readLine();
+    while (columns != -1 && !joinFilters.accepts(decoder.getRow(), 0)) {
+      columns = decoder.readLine();
+    }
+    if (columns != -1) {
+      return new Tuple(Arrays.copyOf(decoder.getRow(), columns));
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * Text files have no pages to skip, so every row is read.
+   * 
+   * @param ranges The rows of interest, ignored
+   */
+  public void setCandidateRows(long[][] ranges) throws IOException {
+    reset();
+  }
+
+  /**
+   * Skips the rows the filter rules out from now on. The row is still parsed,
+   * but no Tuple is created for it.
+   * 
+   * @param column The position of the filtered column
+   * @param f      The filter
+   */
+  public void addJoinFilter(int column, JoinFilter f) {
+    joinFilters.add(column, f);
+  }
+
+  /** Resets to the beginning of the file. */
+  public void reset() throws IOException {
+    channel.position(0);
+    decoder.reset(channel);
+  }
+
+  /** Closes the underlying file. */
+  public void close() throws IOException {
+    channel.close();
+  }
+}
@@ -0,0 +1,37 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * TextTupleWriter writes tuples in the human readable format, one line of
+ * comma separated integers per tuple.
+ */
+public class TextTupleWriter implements TupleWriter {
+
+  BufferedWriter writer;
+
+  /**
+   * Constructor for the TextTupleWriter class.
+   * 
+   * @param f The file to be written, it is truncated if it already exists
+   * @return a TextTupleWriter instance
+   */
+  public TextTupleWriter(File f) throws IOException {
+    writer = new BufferedWriter(new FileWriter(f));
+  }
+
+  /**
+   * @param t The tuple to be written as a new line of the file
+   */
+  public void writeTuple(Tuple t) throws IOException {
+    String out = t.toString();
+    writer.write(out, 0, out.length());
+    writer.newLine();
+  }
+
+  /** Flushes and closes the file. */
+  public void close() throws IOException {
+    writer.close();
+  }
+}
@@ -0,0 +1,121 @@
+import java.util.*;
+import net.sf.jsqlparser.schema.*;
+import java.io.*;
+
+/**
+ * TopNSortOperator handles queries with an ORDER BY and a LIMIT. It outputs the
+ * first n tuples a SortOperator on the same columns would output, without
+ * holding more than n tuples: while it reads its child it keeps the n smallest
+ * tuples so far in a heap whose top is the largest of them, and a new tuple
+ * only replaces the top if it is smaller. Tuples that compare equal keep the
+ * order of the child, as in SortOperator.
+ */
+public class TopNSortOperator extends Operator {
+
+  ArrayList<Column> columns;
+  Operator op;
+  ArrayList<String> schema;
+  ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+  OrderByComparator comp;
+  int ind;
+
+  /**
+   * Constructor for the TopNSortOperator class.
+   *
+   * @param col The names of the columns to be sorted by
+   * @param o   The child operator of TopNSortOperator
+   * @param n   The number of tuples to be output
+   * @return a TopNSortOperator instance
+   */
+  public TopNSortOperator(ArrayList<Column> col, Operator o, int n) {
+    columns = col;
+    op = o;
+    schema = op.getSchema();
+    ind = 0;
+    SortOperator.addRemainingColumns(columns, schema);
+    comp = new OrderByComparator(columns, schema);
+    if (n <= 0) {
+      return;
+    }
+
+    // Every entry of the heap is a tuple and its position in the child, so
+    // that of two equal tuples the later one is larger
+    Comparator<Object[]> larger = new Comparator<Object[]>() {
+      public int compare(Object[] a, Object[] b) {
+        int c = comp.compare((Tuple) b[0], (Tuple) a[0]);
+        return c != 0 ? c : Long.compare((Long) b[1], (Long) a[1]);
+      }
+    };
+    PriorityQueue<Object[]> heap = new PriorityQueue<Object[]>(n, larger);
+    long position = 0;
+    Tuple t = op.getNextTuple();
+    while (t != null) {
+      if (heap.size() < n) {
+        heap.add(new Object[] { t, position });
+      } else if (comp.compare(t, (Tuple) heap.peek()[0]) < 0) {
+        heap.poll();
+        heap.add(new Object[] { t, position });
+      }
+      position++;
+      t = op.getNextTuple();
+    }
+
+    // The heap gives the tuples from the largest to the smallest
+    Tuple[] sorted = new Tuple[heap.size()];
+    for (int i = sorted.length - 1; i >= 0; i--) {
+      sorted[i] = (Tuple) heap.poll()[0];
+    }
+    tuples.addAll(Arrays.asList(sorted));
+  }
+
+  /**
+   * @return The next of the n smallest tuples, in sorted order
+   */
+  public Tuple getNextTuple() {
+    if (ind >= tuples.size()) {
+      return null;
+    }
+    return tuples.get(ind++);
+  }
+
+  /** Reset to the first tuple by setting the index to 0 */
+  public void reset() {
+    ind = 0;
+  }
+
+  /** Closes the child */
+  public void close() {
+    op.close();
+  }
+
+  /**
+   * @return The BufferedWriter used by the TopNSortOperator.
+   */
+  public BufferedWriter getWriter() {
+    return op.getWriter();
+  }
+
+  /**
+   * @return An ArrayList<String>, each of which are the names of the Columns,
+   *         ordered to show their place in a row of the table.
+   */
+  public ArrayList<String> getSchema() {
+    return schema;
+  }
+
+  /** Gets the next tuple and writes it to the file until there are none left */
+  public void dump() {
+    Tuple t = getNextTuple();
+    while (t != null) {
+      try {
+        BufferedWriter writer = op.getWriter();
+        String out = t.toString();
+        writer.write(out, 0, out.length());
+        writer.newLine();
+      } catch (IOException e) {
+        System.out.println(e);
+      }
+      t = getNextTuple();
+    }
+  }
+}
@@ -1,52 +1,71 @@
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
- * Tuple keeps track of the data in one line of the file by storing it in an
- * arraylist. One tuple represents one table entry.
+ * Tuple keeps track of the data in one line of the file by storing it in a
+ * primitive int array whose length is the arity of the tuple. One tuple
+ * represents one table entry.
  */
 public class Tuple {
-  ArrayList<Integer> content = new ArrayList<Integer>();
+  int[] content;
 
   /**
-   * Constructor for the ScanOperator class.
+   * Constructor for the Tuple class.
    * 
    * @param c A line of the file
    * @return a Tuple instance
    */
   public Tuple(String c) {
     String[] s = c.split(",");
-    for (String str : s) {
-      content.add(Integer.parseInt(str));
+    content = new int[s.length];
+    for (int i = 0; i < s.length; i++) {
+      content[i] = Integer.parseInt(s[i]);
     }
   }
 
   /**
-   * Constructor for the ScanOperator class.
+   * Constructor for the Tuple class.
    * 
-   * @return a Tuple instance
+   * @return a Tuple instance with no columns
    */
   public Tuple() {
+    content = new int[0];
   }
 
   /**
-   * Constructor for the ScanOperator class.
+   * Constructor for the Tuple class.
    * 
    * @param c An arraylist of ints, a table entry
    * @return a Tuple instance
    */
   public Tuple(ArrayList<Integer> c) {
+    content = new int[c.size()];
+    for (int i = 0; i < content.length; i++) {
+      content[i] = c.get(i);
+    }
+  }
+
+  /**
+   * Constructor for the Tuple class. The tuple takes ownership of the array, so
+   * the caller must not change it afterwards.
+   * 
+   * @param c An array of ints, a table entry
+   * @return a Tuple instance
+   */
+  public Tuple(int[] c) {
     content = c;
   }
 
   /**
    * @param b A tuple to be combined
-   * @return The combined tuple of b and self
+   * @return The combined tuple of b and self, built with a single allocation of
+   *         the combined array
    */
   public Tuple combine(Tuple b) {
-    Tuple output = new Tuple();
-    output.content = new ArrayList<Integer>(content);
-    output.content.addAll(b.content);
-    return output;
+    int[] values = new int[content.length + b.content.length];
+    System.arraycopy(content, 0, values, 0, content.length);
+    System.arraycopy(b.content, 0, values, content.length, b.content.length);
+    return new Tuple(values);
   }
 
   /**
@@ -54,7 +73,24 @@ public class Tuple {
    * @return true if b and self are equal and false otherwise
    */
   public boolean compare(Tuple b) {
-    return content.equals(b.content);
+    return b != null && Arrays.equals(content, b.content);
+  }
+
+  /**
+   * @param o An object to be compared
+   * @return true if o is a tuple with the same values in the same order
+   */
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof Tuple && Arrays.equals(content, ((Tuple) o).content);
+  }
+
+  /**
+   * @return A hash code of the values, consistent with equals
+   */
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(content);
   }
 
   /**
@@ -62,17 +98,27 @@ public class Tuple {
    * @return The entry in column i
    */
   public int getColumn(int i) {
-    return content.get(i);
+    return content[i];
+  }
+
+  /**
+   * @return The number of columns in the tuple
+   */
+  public int size() {
+    return content.length;
   }
 
   /**
    * @return The string representation of the tuple
    */
   public String toString() {
-    String s = "";
-    for (int i = 0; i < content.size(); i++) {
-      s += content.get(i) + ",";
+    StringBuilder s = new StringBuilder();
+    for (int i = 0; i < content.length; i++) {
+      if (i > 0) {
+        s.append(',');
+      }
+      s.append(content[i]);
     }
-    return s.substring(0, s.length() - 1);
+    return s.toString();
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,44 @@
+import java.io.IOException;
+
+/**
+ * TupleReader is the interface for reading the tuples of a table file one at a
+ * time. ScanOperator reads through a TupleReader so that the on-disk format of
+ * a table (text or binary pages) is hidden from the rest of the operator tree.
+ */
+public interface TupleReader {
+
+  /**
+   * @return The next tuple in the file, or null if there are none left
+   */
+  Tuple readNextTuple() throws IOException;
+
+  /**
+   * Tells the reader which rows may be of interest, so it can skip pages holding
+   * none of them. Rows outside the intervals may still be returned, and readers
+   * of files without pages ignore the intervals. The reader is reset.
+   * 
+   * @param ranges Sorted, disjoint [start, end) intervals of row numbers, or null
+   *               for every row
+   */
+  void setCandidateRows(long[][] ranges) throws IOException;
+
+  /**
+   * Makes the reader skip the rows that a join filter rules out, before a
+   * Tuple is created for them. Rows read before the filter was added may still
+   * be returned.
+   * 
+   * @param column The position of the filtered column in the rows read
+   * @param f      The filter
+   */
+  void addJoinFilter(int column, JoinFilter f);
+
+  /**
+   * Resets the reader to the first tuple of the file.
+   */
+  void reset() throws IOException;
+
+  /**
+   * Releases the file resources held by the reader.
+   */
+  void close() throws IOException;
+}
@@ -0,0 +1,18 @@
+import java.io.IOException;
+
+/**
+ * TupleWriter is the interface for writing tuples to a table file one at a
+ * time. It is the counterpart of TupleReader.
+ */
+public interface TupleWriter {
+
+  /**
+   * @param t The tuple to be written to the end of the file
+   */
+  void writeTuple(Tuple t) throws IOException;
+
+  /**
+   * Flushes anything that is still buffered and closes the file.
+   */
+  void close() throws IOException;
+}
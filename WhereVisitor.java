@@ -39,6 +39,8 @@ public class WhereVisitor implements ExpressionVisitor {
   long longVal;
   // Contains all expressions not containing any column values
   ArrayList<Expression> nonTable = new ArrayList<Expression>();
+  // Every column mentioned in the WHERE expression
+  ArrayList<Column> columns = new ArrayList<Column>();
 
   /**
    * @param t ArrayList<String> representing the order tables are being joined in
@@ -173,11 +175,13 @@ public class WhereVisitor implements ExpressionVisitor {
    * 
    * @return void
    * 
-   *         Sets the table variable to be equal to the table of this column.
+   *         Sets the table variable to be equal to the table of this column,
+   *         and records the column as one the query references.
    */
   @Override
   public void visit(Column tableColumn) {
     table = tableColumn.getTable().toString();
+    columns.add(tableColumn);
   }
 
   /**
@@ -903,6 +907,179 @@ public class WhereVisitor implements ExpressionVisitor {
 
   }
 
+  /**
+   * @param e An expression, possibly null
+   * @return ArrayList<Expression> The conjuncts of e, found by splitting it at
+   *         every AndExpression
+   */
+  public static ArrayList<Expression> getConjuncts(Expression e) {
+    ArrayList<Expression> conjuncts = new ArrayList<Expression>();
+    ArrayList<Expression> stack = new ArrayList<Expression>();
+    if (e != null) {
+      stack.add(e);
+    }
+    while (!stack.isEmpty()) {
+      Expression current = stack.remove(stack.size() - 1);
+      if (current instanceof AndExpression) {
+        AndExpression and = (AndExpression) current;
+        stack.add(and.getRightExpression());
+        stack.add(and.getLeftExpression());
+      } else {
+        conjuncts.add(current);
+      }
+    }
+    return conjuncts;
+  }
+
+  /**
+   * @param e An expression, possibly null
+   * @return Expression e together with the conjuncts it implies through the
+   *         equalities of its columns
+   *
+   *         Columns that conjuncts such as S.A = R.G equate are put in the same
+   *         equivalence class with a union-find. Every two columns of a class
+   *         that no conjunct equates yet get an equality, so any order of the
+   *         tables finds a join key, and the ranges that conjuncts with a
+   *         constant give the columns of a class are intersected and given to
+   *         every column of the class whose own range is wider. So S.A = R.G AND
+   *         R.G < 5 also gets S.A <= 4, which can be selected on Sailors alone.
+   */
+  public static Expression inferPredicates(Expression e) {
+    ArrayList<Expression> conjuncts = getConjuncts(e);
+    HashMap<String, String> parent = new HashMap<String, String>();
+    LinkedHashMap<String, Column> columns = new LinkedHashMap<String, Column>();
+    HashSet<String> equated = new HashSet<String>();
+    for (Expression conjunct : conjuncts) {
+      if (!(conjunct instanceof EqualsTo)) {
+        continue;
+      }
+      Expression left = ((EqualsTo) conjunct).getLeftExpression();
+      Expression right = ((EqualsTo) conjunct).getRightExpression();
+      if (!(left instanceof Column) || !(right instanceof Column) || ((Column) left).getTable() == null
+          || ((Column) right).getTable() == null) {
+        continue;
+      }
+      String a = ((Column) left).getWholeColumnName();
+      String b = ((Column) right).getWholeColumnName();
+      if (!columns.containsKey(a)) {
+        columns.put(a, (Column) left);
+      }
+      if (!columns.containsKey(b)) {
+        columns.put(b, (Column) right);
+      }
+      String rootA = find(parent, a);
+      String rootB = find(parent, b);
+      if (!rootA.equals(rootB)) {
+        parent.put(rootA, rootB);
+      }
+      equated.add(a + "=" + b);
+      equated.add(b + "=" + a);
+    }
+    if (columns.isEmpty()) {
+      return e;
+    }
+
+    // The columns of every class, in the order they first appear, and the
+    // intersection of the ranges of its columns
+    LinkedHashMap<String, ArrayList<Column>> classes = new LinkedHashMap<String, ArrayList<Column>>();
+    for (Map.Entry<String, Column> c : columns.entrySet()) {
+      String root = find(parent, c.getKey());
+      if (!classes.containsKey(root)) {
+        classes.put(root, new ArrayList<Column>());
+      }
+      classes.get(root).add(c.getValue());
+    }
+    HashMap<String, ColumnRange> ranges = new HashMap<String, ColumnRange>();
+    HashMap<String, ColumnRange> classRanges = new HashMap<String, ColumnRange>();
+    for (ColumnRange range : ColumnRange.getRanges(e)) {
+      String name = range.getColumn().getWholeColumnName();
+      ranges.put(name, range);
+      if (columns.containsKey(name)) {
+        String root = find(parent, name);
+        if (!classRanges.containsKey(root)) {
+          classRanges.put(root, new ColumnRange(range.getColumn()));
+        }
+        classRanges.get(root).restrict(range.getLow(), range.getHigh());
+      }
+    }
+
+    ArrayList<Expression> derived = new ArrayList<Expression>();
+    for (Map.Entry<String, ArrayList<Column>> c : classes.entrySet()) {
+      ArrayList<Column> members = c.getValue();
+      for (int i = 0; i < members.size(); i++) {
+        for (int j = i + 1; j < members.size(); j++) {
+          if (!equated.contains(members.get(i).getWholeColumnName() + "=" + members.get(j).getWholeColumnName())) {
+            EqualsTo eq = new EqualsTo();
+            eq.setLeftExpression(members.get(i));
+            eq.setRightExpression(members.get(j));
+            derived.add(eq);
+          }
+        }
+      }
+      ColumnRange bound = classRanges.get(c.getKey());
+      if (bound == null) {
+        continue;
+      }
+      for (Column member : members) {
+        ColumnRange own = ranges.get(member.getWholeColumnName());
+        long low = own == null ? Long.MIN_VALUE : own.getLow();
+        long high = own == null ? Long.MAX_VALUE : own.getHigh();
+        if (bound.getLow() == bound.getHigh() && (low != bound.getLow() || high != bound.getHigh())) {
+          EqualsTo eq = new EqualsTo();
+          eq.setLeftExpression(member);
+          eq.setRightExpression(new LongValue(bound.getLow()));
+          derived.add(eq);
+          continue;
+        }
+        if (bound.getLow() > low) {
+          GreaterThanEquals ge = new GreaterThanEquals();
+          ge.setLeftExpression(member);
+          ge.setRightExpression(new LongValue(bound.getLow()));
+          derived.add(ge);
+        }
+        if (bound.getHigh() < high) {
+          MinorThanEquals le = new MinorThanEquals();
+          le.setLeftExpression(member);
+          le.setRightExpression(new LongValue(bound.getHigh()));
+          derived.add(le);
+        }
+      }
+    }
+
+    Expression result = e;
+    for (Expression d : derived) {
+      result = new AndExpression(result, d);
+    }
+    return result;
+  }
+
+  /**
+   * @param parent The parent of every column in the union-find, by whole column
+   *               name, missing for a root
+   * @param c      The whole name of a column
+   * @return The whole name of the root of the class of the column
+   */
+  private static String find(HashMap<String, String> parent, String c) {
+    String root = c;
+    while (parent.containsKey(root)) {
+      root = parent.get(root);
+    }
+    // Point every column on the path straight at the root
+    while (!c.equals(root)) {
+      String next = parent.get(c);
+      parent.put(c, root);
+      c = next;
+    }
+    return root;
+  }
+
+  /**
+   * @return ArrayList<Column> Every column mentioned in the visited expression
+   */
+  public ArrayList<Column> getColumns() {
+    return columns;
+  }
+
   /**
    * @param
    * @return void
@@ -925,19 +1102,15 @@ public class WhereVisitor implements ExpressionVisitor {
   public Expression combineExpression(ArrayList<String> tbNames) {
     Expression leftExp;
     Expression rightExp;
-    AndExpression result = new AndExpression();
     // Gets the list of expressions for the operator
     if (map.containsKey(tbNames)) {
       ArrayList<Expression> exps = map.get(tbNames);
       if (!exps.isEmpty()) {
         leftExp = exps.get(0);
-        // Combines all the expressions
+        // Combines all the expressions, with a new AndExpression per conjunct
         for (int i = 0; i < exps.size() - 1; i++) {
           rightExp = exps.get(i + 1);
-          result.setLeftExpression(leftExp);
-          result.setRightExpression(rightExp);
-          leftExp = result;
-
+          leftExp = new AndExpression(leftExp, rightExp);
         }
         return leftExp;
       } else {
@@ -960,20 +1133,18 @@ public class WhereVisitor implements ExpressionVisitor {
   public Expression combineLastExpression(Expression e) {
     Expression leftExp;
     Expression rightExp;
-    AndExpression result = new AndExpression();
     if (!nonTable.isEmpty()) {
       leftExp = nonTable.get(0);
       // Combines the expression
       for (int i = 0; i < nonTable.size() - 1; i++) {
         rightExp = nonTable.get(i + 1);
-        result.setLeftExpression(leftExp);
-        result.setRightExpression(rightExp);
-        leftExp = result;
+        leftExp = new AndExpression(leftExp, rightExp);
       }
       // Combines the non-table expression with e
-      result.setLeftExpression(leftExp);
-      result.setRightExpression(e);
-      return result;
+      if (e == null) {
+        return leftExp;
+      }
+      return new AndExpression(leftExp, e);
     } else {
       return e;
     }
@@ -0,0 +1,219 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * ZoneMap records the smallest and largest value of every column on every page
+ * of a data file. It is kept in a small sidecar text file next to the data
+ * file, with one line per page: the number of the first row on the page, the
+ * number of rows, and a min and max per column. Binary tables have one zone map
+ * covering all columns, columnar tables one per column file.
+ * 
+ * SelectOperator compares its column ranges with the zone maps of its table to
+ * find the rows that may match, so the scan can skip the other pages without
+ * reading or decoding them.
+ */
+public class ZoneMap {
+
+  ArrayList<Long> rowStarts = new ArrayList<Long>();
+  ArrayList<Integer> counts = new ArrayList<Integer>();
+  ArrayList<int[]> mins = new ArrayList<int[]>();
+  ArrayList<int[]> maxs = new ArrayList<int[]>();
+  long rows;
+
+  /**
+   * Adds the next page to the zone map.
+   * 
+   * @param count The number of rows on the page
+   * @param min   The smallest value of every column on the page
+   * @param max   The largest value of every column on the page
+   */
+  public void addPage(int count, int[] min, int[] max) {
+    rowStarts.add(rows);
+    counts.add(count);
+    mins.add(min.clone());
+    maxs.add(max.clone());
+    rows += count;
+  }
+
+  /**
+   * @return The number of pages in the zone map
+   */
+  public int getPageCount() {
+    return counts.size();
+  }
+
+  /**
+   * @param page The number of a page
+   * @return The number of the first row on the page
+   */
+  public long getRowStart(int page) {
+    return rowStarts.get(page);
+  }
+
+  /**
+   * @param row The number of a row
+   * @return The number of the page holding the row, or -1 if the file has fewer
+   *         rows
+   */
+  public int findPage(long row) {
+    int lo = 0;
+    int hi = counts.size() - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      if (row < rowStarts.get(mid)) {
+        hi = mid - 1;
+      } else if (row >= rowStarts.get(mid) + counts.get(mid)) {
+        lo = mid + 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return The number of rows in the data file
+   */
+  public long getRowCount() {
+    return rows;
+  }
+
+  /**
+   * @param file The sidecar file to be written
+   */
+  public void write(File file) throws IOException {
+    BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+    for (int p = 0; p < counts.size(); p++) {
+      StringBuilder line = new StringBuilder();
+      line.append(rowStarts.get(p)).append(' ').append(counts.get(p));
+      for (int c = 0; c < mins.get(p).length; c++) {
+        line.append(' ').append(mins.get(p)[c]).append(' ').append(maxs.get(p)[c]);
+      }
+      writer.write(line.toString());
+      writer.newLine();
+    }
+    writer.close();
+  }
+
+  /**
+   * @param file A sidecar file
+   * @return The zone map in the file, or null if there is no such file
+   */
+  public static ZoneMap read(File file) throws IOException {
+    if (!file.exists()) {
+      return null;
+    }
+    ZoneMap zones = new ZoneMap();
+    BufferedReader reader = new BufferedReader(new FileReader(file));
+    String st;
+    while ((st = reader.readLine()) != null) {
+      String[] fields = st.split(" ");
+      int columns = (fields.length - 2) / 2;
+      int[] min = new int[columns];
+      int[] max = new int[columns];
+      for (int c = 0; c < columns; c++) {
+        min[c] = Integer.parseInt(fields[2 + 2 * c]);
+        max[c] = Integer.parseInt(fields[3 + 2 * c]);
+      }
+      zones.addPage(Integer.parseInt(fields[1]), min, max);
+    }
+    reader.close();
+    return zones;
+  }
+
+  /**
+   * @param dataPath The path of a binary data file or of a column file
+   * @return The path of the sidecar file holding its zone map
+   */
+  public static File getZoneFile(String dataPath) {
+    return new File(dataPath + ".zone");
+  }
+
+  /**
+   * Marks the rows of every page whose values of a column lie outside a range.
+   * 
+   * @param column   The index of the column in the zone map
+   * @param range    The range of values that may match
+   * @param excluded The list the [start, end) row interval of every such page
+   *                 is added to
+   */
+  void exclude(int column, ColumnRange range, ArrayList<long[]> excluded) {
+    for (int p = 0; p < counts.size(); p++) {
+      if (!range.overlaps(mins.get(p)[column], maxs.get(p)[column])) {
+        excluded.add(new long[] { rowStarts.get(p), rowStarts.get(p) + counts.get(p) });
+      }
+    }
+  }
+
+  /**
+   * Uses the zone maps of a binary or columnar table to find the rows that may
+   * satisfy the given column ranges.
+   * 
+   * @param tbName The name of the table in the catalog
+   * @param ranges The ranges the columns of matching rows lie in
+   * @return The sorted, disjoint [start, end) intervals of the rows that may
+   *         match, or null if the zone maps cannot rule out any row
+   */
+  public static long[][] getCandidateRows(String tbName, ArrayList<ColumnRange> ranges) throws IOException {
+    DatabaseCatalog catalog = DatabaseCatalog.getInstance();
+    String format = catalog.getFormat(tbName);
+    ArrayList<String> schema = catalog.getSchema(tbName);
+    if (ranges.isEmpty() || !(format.equals("binary") || format.equals("columnar"))) {
+      return null;
+    }
+    ArrayList<long[]> excluded = new ArrayList<long[]>();
+    long rows = -1;
+    ZoneMap tableZones = null;
+    for (ColumnRange range : ranges) {
+      int column = schema.indexOf(range.getColumn().getColumnName());
+      if (column == -1) {
+        continue;
+      }
+      ZoneMap zones;
+      if (format.equals("binary")) {
+        if (tableZones == null) {
+          tableZones = read(getZoneFile(catalog.getTbPath(tbName)));
+        }
+        zones = tableZones;
+      } else {
+        zones = read(getZoneFile(new File(catalog.getTbPath(tbName), schema.get(column)).getPath()));
+        column = 0;
+      }
+      if (zones == null) {
+        return null;
+      }
+      rows = zones.getRowCount();
+      if (range.isEmpty()) {
+        excluded.add(new long[] { 0, rows });
+      } else {
+        zones.exclude(column, range, excluded);
+      }
+    }
+    if (excluded.isEmpty()) {
+      return null;
+    }
+    // The candidates are the gaps between the merged excluded intervals
+    Collections.sort(excluded, new Comparator<long[]>() {
+      public int compare(long[] a, long[] b) {
+        return Long.compare(a[0], b[0]);
+      }
+    });
+    ArrayList<long[]> candidates = new ArrayList<long[]>();
+    long next = 0;
+    for (long[] interval : excluded) {
+      if (interval[0] > next) {
+        candidates.add(new long[] { next, interval[0] });
+      }
+      next = Math.max(next, interval[1]);
+    }
+    if (next < rows) {
+      candidates.add(new long[] { next, rows });
+    }
+    return candidates.toArray(new long[candidates.size()][]);
+  }
+}